@@ -0,0 +1,54 @@
+package com.github.boardyb.machinist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from starting the application against an in-memory H2 database to its first successful request,
+ * which fetches all machines, with the default settings and with the {@code fast-startup} profile. Every start is
+ * measured once in a new JVM, so the classes are loaded and the code is interpreted like in a new instance.
+ * The time which the JVM takes to start is not included, it is printed by the training run of the {@code app-cds}
+ * profile, which can be compared with and without the class data sharing archive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 5, jvmArgsAppend = "-Dlogging.level.root=WARN")
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class MachinistStartupBenchmark {
+
+    @Param({"default", "fast-startup"})
+    private String profile;
+
+    private ConfigurableApplicationContext applicationContext;
+
+    @Benchmark
+    public int startUntilFirstSuccessfulRequest() throws Exception {
+        this.applicationContext = StartupTrainingRun.start(this.profile);
+        int port = StartupTrainingRun.portOf(this.applicationContext);
+        int status;
+        while ((status = StartupTrainingRun.send("GET", port, "/api/machine/all", null)) != 200) {
+            Thread.sleep(1);
+        }
+        return status;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        this.applicationContext.close();
+    }
+}
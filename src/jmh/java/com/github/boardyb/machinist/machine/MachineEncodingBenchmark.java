@@ -0,0 +1,115 @@
+package com.github.boardyb.machinist.machine;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import com.github.boardyb.restmodel.MachineTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares the representations of lists of machines which can be negotiated with the API: the time the server takes
+ * to encode them, optionally compressed, and the time a client takes to decode them. The size of the payload of
+ * every combination is printed when the benchmark is set up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MachineEncodingBenchmark {
+
+    private static final TypeReference<List<MachineTO>> MACHINE_LIST = new TypeReference<List<MachineTO>>() {
+    };
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"none", "gzip"})
+    private String compression;
+
+    @Param({"1000", "10000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private List<MachineTO> machines;
+    private ByteArrayOutputStream buffer;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.objectMapper = Jackson2ObjectMapperBuilder.json()
+                .factory(createFactory(this.format))
+                .modulesToInstall(new GuavaModule())
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        this.machines = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            Machine machine = new Machine("benchmark machine " + i, "a machine which is used to measure encoding", 2000);
+            machine.setId(UUID.randomUUID().toString());
+            this.machines.add(machine.toDTO());
+        }
+        this.buffer = new ByteArrayOutputStream();
+        this.payload = encodeMachines();
+        System.out.printf("%n%d machines as %s with %s compression: %d bytes%n",
+                this.size, this.format, this.compression, this.payload.length);
+    }
+
+    private static JsonFactory createFactory(String format) {
+        switch (format) {
+            case "smile":
+                return new SmileFactory();
+            case "cbor":
+                return new CBORFactory();
+            default:
+                return new JsonFactory();
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeMachines() throws IOException {
+        this.buffer.reset();
+        try (OutputStream outputStream = "gzip".equals(this.compression)
+                ? new GZIPOutputStream(this.buffer)
+                : this.buffer) {
+            this.objectMapper.writeValue(outputStream, this.machines);
+        }
+        return this.buffer.toByteArray();
+    }
+
+    @Benchmark
+    public List<MachineTO> decodeMachines() throws IOException {
+        try (InputStream inputStream = "gzip".equals(this.compression)
+                ? new GZIPInputStream(new ByteArrayInputStream(this.payload))
+                : new ByteArrayInputStream(this.payload)) {
+            return this.objectMapper.readValue(inputStream, MACHINE_LIST);
+        }
+    }
+}
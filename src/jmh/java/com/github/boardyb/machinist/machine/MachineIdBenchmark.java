@@ -0,0 +1,132 @@
+package com.github.boardyb.machinist.machine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time of inserting millions of rows into a table keyed by machine ids, in batches of
+ * {@value #BATCH_SIZE} rows with a commit after each, and prints the insert rate and the size of the primary key
+ * index afterwards. The ids are random UUIDs stored as VARCHAR like before, random UUIDs stored as uuid, or
+ * time-ordered UUIDs of the {@link TimeOrderedUuidGenerator} stored as uuid like now.
+ * <p>
+ * It runs against an H2 file in {@code target} by default, which has no index size function, so the size of
+ * the whole database file is printed instead. Postgres, whose sizes are the ones that matter, can be measured by
+ * passing its url, e.g. {@code -p url=jdbc:postgresql://localhost/machinist?user=user&password=password}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class MachineIdBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final String TABLE = "machine_id_benchmark";
+    private static final String H2_FILE_PREFIX = "jdbc:h2:file:";
+
+    @Param({"random-varchar", "random-uuid", "time-ordered-uuid"})
+    private String ids;
+
+    @Param({"2000000"})
+    private int rows;
+
+    @Param({H2_FILE_PREFIX + "./target/machine-id-benchmark"})
+    private String url;
+
+    private Connection connection;
+    private TimeOrderedUuidGenerator generator;
+    private long startNanos;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws SQLException {
+        if (this.url.startsWith(H2_FILE_PREFIX)) {
+            new File(databaseFileOf(this.url)).delete();
+        }
+        this.connection = DriverManager.getConnection(this.url);
+        this.generator = new TimeOrderedUuidGenerator();
+        try (Statement statement = this.connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + TABLE);
+            statement.execute("CREATE TABLE " + TABLE + " (id "
+                    + ("random-varchar".equals(this.ids) ? "VARCHAR(50)" : "UUID")
+                    + " PRIMARY KEY NOT NULL, name VARCHAR(100) NOT NULL)");
+        }
+        this.connection.setAutoCommit(false);
+        this.startNanos = System.nanoTime();
+    }
+
+    @Benchmark
+    public int insertRows() throws SQLException {
+        try (PreparedStatement statement = this.connection.prepareStatement(
+                "INSERT INTO " + TABLE + " (id, name) VALUES (?, ?)")) {
+            for (int i = 0; i < this.rows; i++) {
+                if ("time-ordered-uuid".equals(this.ids)) {
+                    statement.setObject(1, this.generator.nextUuid());
+                } else if ("random-uuid".equals(this.ids)) {
+                    statement.setObject(1, UUID.randomUUID());
+                } else {
+                    statement.setString(1, UUID.randomUUID().toString());
+                }
+                statement.setString(2, "benchmark machine");
+                statement.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                    this.connection.commit();
+                }
+            }
+            statement.executeBatch();
+            this.connection.commit();
+        }
+        return this.rows;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws SQLException {
+        double seconds = (System.nanoTime() - this.startNanos) / 1e9;
+        this.connection.setAutoCommit(true);
+        String size;
+        try (Statement statement = this.connection.createStatement()) {
+            if (this.url.startsWith(H2_FILE_PREFIX)) {
+                statement.execute("CHECKPOINT SYNC");
+                size = "database file: " + new File(databaseFileOf(this.url)).length() / (1024 * 1024) + " MB";
+            } else {
+                try (ResultSet resultSet = statement.executeQuery("SELECT pg_indexes_size('" + TABLE + "')")) {
+                    resultSet.next();
+                    size = "primary key index: " + resultSet.getLong(1) / (1024 * 1024) + " MB";
+                }
+            }
+            statement.execute("DROP TABLE " + TABLE);
+        }
+        this.connection.close();
+        if (this.url.startsWith(H2_FILE_PREFIX)) {
+            new File(databaseFileOf(this.url)).delete();
+        }
+        System.out.printf("%n%s ids: %.0f rows/s, %s%n", this.ids, this.rows / seconds, size);
+    }
+
+    private static String databaseFileOf(String url) {
+        int parametersIndex = url.indexOf(';');
+        return url.substring(H2_FILE_PREFIX.length(), parametersIndex < 0 ? url.length() : parametersIndex) + ".mv.db";
+    }
+}
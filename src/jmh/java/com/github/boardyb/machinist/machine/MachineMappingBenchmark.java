@@ -0,0 +1,57 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.restmodel.MachineTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the mapping of a single machine to its DTO, from a managed entity and from the columns of a projection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MachineMappingBenchmark {
+
+    private Machine machine;
+
+    @Setup
+    public void setUp() {
+        this.machine = new Machine("Milling machine", "A milling machine is a manufacturing machine which uses " +
+                "rotary cutters to remove material by advancing a cutter into a work piece.", 2017);
+        this.machine.setId(UUID.randomUUID().toString());
+        this.machine.setVersion(3);
+    }
+
+    @Benchmark
+    public MachineTO entityToDTO() {
+        return this.machine.toDTO();
+    }
+
+    @Benchmark
+    public MachineTO projectionToDTO() {
+        return new ProjectedMachineTO(this.machine.getId(), this.machine.getCreatedAt(), this.machine.getUpdatedAt(),
+                this.machine.getName(), this.machine.getDescription(), this.machine.getYearOfProduction(),
+                this.machine.getVersion());
+    }
+
+    @Benchmark
+    public MachineDelta projectionToDelta() {
+        return new MachineDelta(this.machine.getId(), this.machine.getCreatedAt(), this.machine.getUpdatedAt(),
+                this.machine.getName(), this.machine.getDescription(), this.machine.getYearOfProduction(),
+                this.machine.getVersion(), false);
+    }
+}
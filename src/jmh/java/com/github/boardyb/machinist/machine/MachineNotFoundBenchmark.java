@@ -0,0 +1,82 @@
+package com.github.boardyb.machinist.machine;
+
+import ch.qos.logback.classic.Logger;
+import com.github.boardyb.machinist.MachinistApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Measures the throughput of fetching a machine which does not exist through the API, which is what a client
+ * probing stale ids does. In the {@code full} mode every error captures its stack trace and logs it, like every
+ * error did before the error log was sampled, in the {@code sampled} mode the errors are stackless and only
+ * the first ones of every interval are logged. The bulkhead and the rate limit are turned off, so only the request
+ * path is measured, and the log is written to {@code target/machine-not-found-benchmark.log} instead of the console,
+ * so the output of the benchmark stays readable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MachineNotFoundBenchmark {
+
+    @Param({"full", "sampled"})
+    private String mode;
+
+    private ConfigurableApplicationContext applicationContext;
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() {
+        boolean full = "full".equals(this.mode);
+        this.applicationContext = new SpringApplicationBuilder(MachinistApplication.class, MachineController.class,
+                IntegrationTestConfiguration.class)
+                .properties("server.port=0",
+                        "logging.file.name=target/machine-not-found-benchmark.log",
+                        "logging.level.com.github.boardyb=WARN",
+                        "machinist.rate-limit.enabled=false",
+                        "machinist.bulkhead.enabled=false",
+                        "machinist.errors.stack-traces=" + full,
+                        "machinist.errors.log-limit=" + (full ? Integer.MAX_VALUE : 10))
+                .run();
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).detachAppender("CONSOLE");
+        this.mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) this.applicationContext).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.applicationContext.close();
+    }
+
+    @Benchmark
+    public int getMissingMachine() throws Exception {
+        MvcResult mvcResult = this.mockMvc.perform(get("/api/machine/missing")).andReturn();
+        if (mvcResult.getRequest().isAsyncStarted()) {
+            mvcResult = this.mockMvc.perform(asyncDispatch(mvcResult)).andReturn();
+        }
+        return mvcResult.getResponse().getStatus();
+    }
+}
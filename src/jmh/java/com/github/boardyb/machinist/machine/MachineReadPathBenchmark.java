@@ -0,0 +1,80 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.machinist.MachinistApplication;
+import com.github.boardyb.restmodel.MachineTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Measures one fetch of all {@value #MACHINE_COUNT} machines of an in-memory H2 database in a read-only transaction,
+ * through managed entities mapped to DTOs and through DTO projections. Run it with the GC profiler to compare the
+ * bytes allocated per fetch ({@code gc.alloc.rate.norm}):
+ * {@code mvn -Pbenchmark verify -DskipTests -Djmh.args="MachineReadPathBenchmark -prof gc"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MachineReadPathBenchmark {
+
+    private static final int MACHINE_COUNT = 5000;
+
+    private ConfigurableApplicationContext applicationContext;
+    private MachineRepository machineRepository;
+    private TransactionTemplate readOnlyTransaction;
+
+    @Setup
+    public void setUp() {
+        this.applicationContext = new SpringApplicationBuilder(MachinistApplication.class, IntegrationTestConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN")
+                .run();
+        this.machineRepository = this.applicationContext.getBean(MachineRepository.class);
+        this.readOnlyTransaction = new TransactionTemplate(this.applicationContext.getBean(PlatformTransactionManager.class));
+        this.readOnlyTransaction.setReadOnly(true);
+        List<Machine> machines = new ArrayList<>();
+        for (int i = 0; i < MACHINE_COUNT; i++) {
+            machines.add(new Machine("benchmark machine " + i, "a machine which is used to measure allocations", 2000));
+        }
+        this.machineRepository.saveAll(machines);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.applicationContext.close();
+    }
+
+    @Benchmark
+    public List<MachineTO> fetchEntitiesAndMapToDTOs() {
+        return this.readOnlyTransaction.execute(status -> this.machineRepository.findAllByDeletedFalseOrderByUpdatedAtDesc()
+                .stream()
+                .map(Machine::toDTO)
+                .collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public List<MachineTO> fetchDTOProjections() {
+        return this.readOnlyTransaction.execute(status -> this.machineRepository.findAllProjectedByDeletedFalse());
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.boardyb.machinist.machine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import com.github.boardyb.restmodel.MachineTO;
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the serialization of lists of machines with an object mapper set up like the one of the application,
+ * with the Guava and JSR-310 modules. The JSON is written to a discarding stream, so only the serialization is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MachineSerializationBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private List<MachineTO> machines;
+
+    @Setup
+    public void setUp() {
+        this.objectMapper = Jackson2ObjectMapperBuilder.json()
+                .modulesToInstall(new GuavaModule())
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        this.machines = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            Machine machine = new Machine("benchmark machine " + i, "a machine which is used to measure serialization", 2000);
+            machine.setId(UUID.randomUUID().toString());
+            this.machines.add(machine.toDTO());
+        }
+    }
+
+    @Benchmark
+    public void serializeMachines() throws IOException {
+        this.objectMapper.writeValue(ByteStreams.nullOutputStream(), this.machines);
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.machinist.MachinistApplication;
+import com.github.boardyb.restmodel.CreateMachineRequest;
+import com.github.boardyb.restmodel.MachinePage;
+import com.github.boardyb.restmodel.MachineSearchPage;
+import com.github.boardyb.restmodel.MachineTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures calls of the machine service end to end, through the cache and the repository, against
+ * an in-memory H2 database which holds {@value #MACHINE_COUNT} machines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MachineServiceBenchmark {
+
+    private static final int MACHINE_COUNT = 1000;
+
+    private ConfigurableApplicationContext applicationContext;
+    private MachineService machineService;
+    private String machineId;
+
+    @Setup
+    public void setUp() {
+        this.applicationContext = new SpringApplicationBuilder(MachinistApplication.class, IntegrationTestConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN")
+                .run();
+        this.machineService = this.applicationContext.getBean(MachineService.class);
+        for (int i = 0; i < MACHINE_COUNT; i++) {
+            this.machineId = this.machineService.createMachine(createMachineRequest("benchmark machine " + i)).getId();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.applicationContext.close();
+    }
+
+    @Benchmark
+    public MachineTO getMachineById() {
+        return this.machineService.getMachineById(this.machineId);
+    }
+
+    @Benchmark
+    public MachinePage getFirstMachinePage() {
+        return this.machineService.getMachinePage(null, 50);
+    }
+
+    @Benchmark
+    public List<MachineTO> getAllMachines() {
+        return this.machineService.getAllMachines();
+    }
+
+    @Benchmark
+    public MachineSearchPage searchMachines() {
+        return this.machineService.searchMachines("benchmark 99", 0, 20);
+    }
+
+    @Benchmark
+    public MachineTO createMachine() {
+        return this.machineService.createMachine(createMachineRequest("created benchmark machine"));
+    }
+
+    private static CreateMachineRequest createMachineRequest(String name) {
+        CreateMachineRequest request = new CreateMachineRequest();
+        request.setName(name);
+        request.setDescription("a machine which is used to measure the service");
+        request.setYearOfProduction(2000);
+        return request;
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.boardyb.machinist.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes the connections of read-only transactions to the healthy replicas in turn, and every other connection
+ * to the primary. Reads fall back to the primary when no replica is healthy, or when reads of the current
+ * thread are pinned to it with {@link #setPrimaryForced(boolean)}.
+ * <p>
+ * The read-only flag of a transaction is only known after its connection is requested, so this data source must
+ * be used through a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, which requests the
+ * connection when the first statement is executed.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private static final ThreadLocal<Boolean> PRIMARY_FORCED = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final int validationTimeoutSeconds;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private volatile List<Replica> healthyReplicas;
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, int validationTimeoutSeconds) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas.add(new Replica(i, replicas.get(i)));
+        }
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.healthyReplicas = Collections.unmodifiableList(new ArrayList<>(this.replicas));
+    }
+
+    /**
+     * Pins the reads of the current thread to the primary, so they see the writes which are not replicated yet.
+     */
+    public static void setPrimaryForced(boolean primaryForced) {
+        if (primaryForced) {
+            PRIMARY_FORCED.set(Boolean.TRUE);
+        } else {
+            PRIMARY_FORCED.remove();
+        }
+    }
+
+    public static boolean isPrimaryForced() {
+        return PRIMARY_FORCED.get() != null;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return determineDataSource().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return determineDataSource().getConnection(username, password);
+    }
+
+    DataSource determineDataSource() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || isPrimaryForced()) {
+            return this.primary;
+        }
+        List<Replica> candidates = this.healthyReplicas;
+        if (candidates.isEmpty()) {
+            return this.primary;
+        }
+        int index = Math.floorMod(this.nextReplica.getAndIncrement(), candidates.size());
+        return candidates.get(index).dataSource;
+    }
+
+    /**
+     * Validates a connection of every replica and excludes the ones which fail from the routing of reads,
+     * until they pass the validation again.
+     */
+    public void checkReplicas() {
+        List<Replica> healthy = new ArrayList<>(this.replicas.size());
+        for (Replica replica : this.replicas) {
+            boolean valid = isValid(replica);
+            if (valid != replica.healthy) {
+                log.warn("Replica [{}] became {}", replica.index, valid ? "healthy, routing reads to it" : "unhealthy, excluding it from reads");
+                replica.healthy = valid;
+            }
+            if (valid) {
+                healthy.add(replica);
+            }
+        }
+        this.healthyReplicas = Collections.unmodifiableList(healthy);
+    }
+
+    int getHealthyReplicaCount() {
+        return this.healthyReplicas.size();
+    }
+
+    private boolean isValid(Replica replica) {
+        try (Connection connection = replica.dataSource.getConnection()) {
+            return connection.isValid(this.validationTimeoutSeconds);
+        } catch (SQLException e) {
+            log.debug("Validation of replica [{}] failed", replica.index, e);
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Replica replica : this.replicas) {
+            closeIfPossible(replica.dataSource);
+        }
+        closeIfPossible(this.primary);
+    }
+
+    private static void closeIfPossible(DataSource dataSource) throws IOException {
+        if (dataSource instanceof Closeable) {
+            ((Closeable) dataSource).close();
+        }
+    }
+
+    private static class Replica {
+
+        private final int index;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        Replica(int index, DataSource dataSource) {
+            this.index = index;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.boardyb.machinist.datasource;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Keeps the reads of a client on the primary for a short time after it sent a write request, so it sees its own
+ * writes even if the replicas lag behind. The end of this time is handed to the client in a cookie, so it is
+ * honoured by every instance of the application.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE_NAME = "machinist-primary-until";
+
+    private final Duration stickiness;
+    private final Clock clock;
+
+    public ReadYourWritesFilter(Duration stickiness, Clock clock) {
+        this.stickiness = stickiness;
+        this.clock = clock;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long now = this.clock.millis();
+        boolean write = isWrite(request);
+        if (write) {
+            Cookie cookie = new Cookie(COOKIE_NAME, String.valueOf(now + this.stickiness.toMillis()));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, this.stickiness.getSeconds()));
+            response.addCookie(cookie);
+        }
+        ReadWriteRoutingDataSource.setPrimaryForced(write || isPrimaryRequested(request, now));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReadWriteRoutingDataSource.setPrimaryForced(false);
+        }
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        String method = request.getMethod();
+        return !("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method));
+    }
+
+    private static boolean isPrimaryRequested(HttpServletRequest request, long now) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return false;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue()) > now;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+}
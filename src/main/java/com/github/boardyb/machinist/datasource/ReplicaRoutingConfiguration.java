@@ -0,0 +1,92 @@
+package com.github.boardyb.machinist.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the data source of the application with a {@link ReadWriteRoutingDataSource} when replicas are
+ * configured with {@code machinist.datasource.replicas.urls}. The primary and the replicas share the credentials
+ * and the {@code spring.datasource.hikari.*} settings of the primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "machinist.datasource.replicas.urls")
+public class ReplicaRoutingConfiguration {
+
+    private static final String HIKARI_PREFIX = "spring.datasource.hikari";
+
+    private ReadWriteRoutingDataSource routingDataSource;
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties,
+                                 Environment environment,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${machinist.datasource.replicas.urls}") List<String> replicaUrls,
+                                 @Value("${machinist.datasource.replicas.validation-timeout:PT1S}") Duration validationTimeout) {
+        HikariDataSource primary = createPool(properties, environment, meterRegistry, properties.determineUrl(), "primary");
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            replicas.add(createPool(properties, environment, meterRegistry, replicaUrls.get(i), "replica-" + i));
+        }
+        this.routingDataSource = new ReadWriteRoutingDataSource(primary, replicas,
+                (int) Math.max(1, validationTimeout.getSeconds()));
+        return new LazyConnectionDataSourceProxy(this.routingDataSource);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(
+            @Value("${machinist.datasource.replicas.stickiness:PT5S}") Duration stickiness) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration =
+                new FilterRegistrationBean<>(new ReadYourWritesFilter(stickiness, Clock.systemUTC()));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        if (this.routingDataSource != null) {
+            this.routingDataSource.close();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${machinist.datasource.replicas.health-check-interval:PT10S}")
+    void checkReplicas() {
+        if (this.routingDataSource != null) {
+            this.routingDataSource.checkReplicas();
+        }
+    }
+
+    private static HikariDataSource createPool(DataSourceProperties properties,
+                                               Environment environment,
+                                               MeterRegistry meterRegistry,
+                                               String url,
+                                               String poolName) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url)
+                .build();
+        Binder.get(environment).bind(HIKARI_PREFIX, Bindable.ofInstance(pool));
+        pool.setPoolName(poolName);
+        pool.setMetricRegistry(meterRegistry);
+        return pool;
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.boardyb.machinist.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link AsyncAppender} which never blocks the logging thread and counts the events it drops. Once the free
+ * capacity of the queue falls below the discarding threshold, the events of INFO level and below are dropped, and
+ * when the queue is full, every event is dropped.
+ */
+public class CountingAsyncAppender extends AsyncAppender {
+
+    private final LongAdder droppedEvents = new LongAdder();
+
+    public CountingAsyncAppender() {
+        setNeverBlock(true);
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        int remainingCapacity = getRemainingCapacity();
+        if (remainingCapacity == 0 || (remainingCapacity < getDiscardingThreshold() && isDiscardable(event))) {
+            this.droppedEvents.increment();
+            return;
+        }
+        super.append(event);
+    }
+
+    public long getDroppedEvents() {
+        return this.droppedEvents.sum();
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.boardyb.machinist.logging;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.util.Iterator;
+
+/**
+ * Tags the log lines of every request with its id, and publishes the dropped events and the queue size of the
+ * asynchronous appenders of the log, which are set up by the {@code prod} profile of {@code logback-spring.xml}.
+ */
+@Configuration
+public class LoggingConfiguration {
+
+    static final String METRIC_PREFIX = "machinist.logging";
+
+    @Bean
+    public FilterRegistrationBean<RequestIdFilter> requestIdFilter() {
+        FilterRegistrationBean<RequestIdFilter> registration = new FilterRegistrationBean<>(new RequestIdFilter());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Bean
+    public MeterBinder asyncAppenderMetrics() {
+        return registry -> {
+            if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext)) {
+                return;
+            }
+            LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+            for (Logger logger : loggerContext.getLoggerList()) {
+                Iterator<Appender<ILoggingEvent>> appenders = logger.iteratorForAppenders();
+                while (appenders.hasNext()) {
+                    Appender<?> appender = appenders.next();
+                    if (appender instanceof CountingAsyncAppender) {
+                        CountingAsyncAppender asyncAppender = (CountingAsyncAppender) appender;
+                        FunctionCounter.builder(METRIC_PREFIX + ".dropped", asyncAppender,
+                                CountingAsyncAppender::getDroppedEvents)
+                                .description("Log events dropped by the asynchronous appender")
+                                .tag("appender", asyncAppender.getName())
+                                .register(registry);
+                        Gauge.builder(METRIC_PREFIX + ".queue.size", asyncAppender,
+                                CountingAsyncAppender::getNumberOfElementsInQueue)
+                                .description("Log events waiting in the queue of the asynchronous appender")
+                                .tag("appender", asyncAppender.getName())
+                                .register(registry);
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.boardyb.machinist.logging;
+
+import org.slf4j.MDC;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Puts the id of the request into the {@link MDC} of the log for the time of the request, so every line logged
+ * while serving it can be correlated. The id is taken from the {@value #REQUEST_ID_HEADER} header if the client or
+ * a proxy sent one, otherwise it is generated, and it is returned in the same header. The id is kept for the
+ * dispatch of the results of asynchronous operations as well.
+ */
+public class RequestIdFilter extends OncePerRequestFilter {
+
+    static final String REQUEST_ID_HEADER = "X-Request-Id";
+    static final String MDC_KEY = "requestId";
+    static final int MAX_LENGTH = 64;
+
+    private static final String REQUEST_ID_ATTRIBUTE = RequestIdFilter.class.getName() + ".requestId";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String requestId = (String) request.getAttribute(REQUEST_ID_ATTRIBUTE);
+        if (requestId == null) {
+            requestId = request.getHeader(REQUEST_ID_HEADER);
+            if (requestId == null || requestId.isEmpty() || requestId.length() > MAX_LENGTH) {
+                requestId = UUID.randomUUID().toString();
+            }
+            request.setAttribute(REQUEST_ID_ATTRIBUTE, requestId);
+            response.setHeader(REQUEST_ID_HEADER, requestId);
+        }
+        MDC.put(MDC_KEY, requestId);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            MDC.remove(MDC_KEY);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.boardyb.machinist.machine;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * A soft-deleted machine which was moved out of the machine table by the {@link MachineArchiver}.
+ */
+@Data
+@Entity
+@Table(name = "machine_archive", schema = "machinist")
+@NoArgsConstructor
+public class ArchivedMachine {
+
+    @Id
+    @Column(name = "id")
+    private String id;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "description")
+    private String description;
+
+    @Column(name = "year_of_production")
+    private Integer yearOfProduction;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+}
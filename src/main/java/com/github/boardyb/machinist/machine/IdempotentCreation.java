@@ -0,0 +1,35 @@
+package com.github.boardyb.machinist.machine;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * The machine which was created by the first request with an idempotency key, and the hash of that request.
+ */
+@Data
+@Entity
+@Table(name = "machine_idempotency_key", schema = "machinist")
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotentCreation {
+
+    @Id
+    @Column(name = "idempotency_key")
+    private String idempotencyKey;
+
+    @Column(name = "request_hash", nullable = false)
+    private String requestHash;
+
+    @Column(name = "machine_id", nullable = false)
+    private String machineId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
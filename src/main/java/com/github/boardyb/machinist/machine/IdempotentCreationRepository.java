@@ -0,0 +1,15 @@
+package com.github.boardyb.machinist.machine;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface IdempotentCreationRepository extends CrudRepository<IdempotentCreation, String> {
+
+    @Modifying
+    @Query("DELETE FROM IdempotentCreation c WHERE c.createdAt < :createdBefore")
+    int deleteCreatedBefore(@Param("createdBefore") LocalDateTime createdBefore);
+}
@@ -0,0 +1,43 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.restmodel.MachineTO;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Portable fallback of {@link PostgresMachineSearch} for databases without full-text search, eg. H2.
+ * Matches machines containing every word of the query in their name or description, those with a match in
+ * their name first. It can not use any index, so it is only meant for tests and local development.
+ */
+public class LikeMachineSearch implements MachineSearch {
+
+    private EntityManager entityManager;
+
+    public LikeMachineSearch(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<MachineTO> search(String query, int offset, int limit) {
+        List<String> patterns = new ArrayList<>();
+        for (String word : query.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+            patterns.add("%" + word.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+        }
+        StringBuilder jpql = new StringBuilder(MachineRepository.MACHINE_TO_PROJECTION).append("WHERE m.deleted = false");
+        for (int i = 0; i < patterns.size(); i++) {
+            jpql.append(" AND LOWER(CONCAT(m.name, ' ', COALESCE(m.description, ''))) LIKE :pattern").append(i)
+                    .append(" ESCAPE '\\'");
+        }
+        jpql.append(" ORDER BY CASE WHEN LOWER(m.name) LIKE :pattern0 ESCAPE '\\' THEN 0 ELSE 1 END, m.id");
+
+        TypedQuery<MachineTO> typedQuery = this.entityManager.createQuery(jpql.toString(), MachineTO.class);
+        for (int i = 0; i < patterns.size(); i++) {
+            typedQuery.setParameter("pattern" + i, patterns.get(i));
+        }
+        return typedQuery.setFirstResult(offset).setMaxResults(limit).getResultList();
+    }
+}
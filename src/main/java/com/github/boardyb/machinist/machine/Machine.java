@@ -14,6 +14,7 @@ import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.time.LocalDateTime;
+import java.util.regex.Pattern;
 
 @Data
 @Entity
@@ -22,10 +23,17 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 public class Machine {
 
+    public static final int MIN_YEAR_OF_PRODUCTION = 1950;
+    public static final int MAX_YEAR_OF_PRODUCTION = 2020;
+
+    private static final Pattern ID_PATTERN =
+            Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
     @Id
     @Column(name = "id")
-    @GeneratedValue(generator = "uuid2")
-    @GenericGenerator(name = "uuid2", strategy = "uuid2")
+    @GeneratedValue(generator = "time-ordered-uuid")
+    @GenericGenerator(name = "time-ordered-uuid",
+            strategy = "com.github.boardyb.machinist.machine.TimeOrderedUuidGenerator")
     private String id;
 
     @Column(name = "created_at", nullable = false, updatable = false)
@@ -46,19 +54,31 @@ public class Machine {
     private String description;
 
     @Column(name = "year_of_production")
-    @Min(1950)
-    @Max(2020)
+    @Min(MIN_YEAR_OF_PRODUCTION)
+    @Max(MAX_YEAR_OF_PRODUCTION)
     private Integer yearOfProduction;
 
     @Column(name = "deleted")
     private boolean deleted;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
     public Machine(String name, String description, Integer yearOfProduction) {
         this.name = name;
         this.description = description;
         this.yearOfProduction = yearOfProduction;
     }
 
+    /**
+     * Ids of machines are UUIDs, which are stored in uuid columns by Postgres. Strings in other formats are not
+     * looked up, because they can not be ids of machines, and Postgres refuses to compare them to uuids.
+     */
+    public static boolean isWellFormedId(String id) {
+        return id != null && ID_PATTERN.matcher(id).matches();
+    }
+
     public MachineTO toDTO() {
         MachineTO machineTO = new MachineTO();
         machineTO.setId(id);
@@ -67,6 +87,7 @@ public class Machine {
         machineTO.setName(name);
         machineTO.setDescription(description);
         machineTO.setYearOfProduction(yearOfProduction);
+        machineTO.setVersion(version);
         return machineTO;
     }
 }
@@ -0,0 +1,68 @@
+package com.github.boardyb.machinist.machine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Moves the machines which were deleted longer than the retention ago from the machine table to the archive table,
+ * so the queries of live machines do not have to skip them. Every batch is archived in its own transaction, so the
+ * deleted rows are only locked for the time of a single batch.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "machinist.archive.enabled", matchIfMissing = true)
+public class MachineArchiver {
+
+    private final MachineRepository machineRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration retention;
+    private final int batchSize;
+
+    @Autowired
+    public MachineArchiver(MachineRepository machineRepository,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${machinist.archive.retention:P30D}") Duration retention,
+                           @Value("${machinist.archive.batch-size:500}") int batchSize) {
+        this.machineRepository = machineRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retention = retention;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Archives batches of machines deleted before the retention until none is left, returns the number of
+     * archived machines.
+     */
+    @Scheduled(fixedDelayString = "${machinist.archive.interval:PT1H}")
+    public int archiveDeletedMachines() {
+        LocalDateTime deletedBefore = LocalDateTime.now().minus(this.retention);
+        int archived = 0;
+        int batch;
+        do {
+            batch = this.transactionTemplate.execute(status -> archiveBatch(deletedBefore));
+            archived += batch;
+        } while (batch == this.batchSize);
+        log.info("Archived [{}] machines deleted before [{}]", archived, deletedBefore);
+        return archived;
+    }
+
+    private int archiveBatch(LocalDateTime deletedBefore) {
+        List<String> ids = this.machineRepository.lockArchivableIds(deletedBefore, this.batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        this.machineRepository.archiveDeletedByIds(ids);
+        this.machineRepository.purgeDeletedByIds(ids);
+        return ids.size();
+    }
+}
@@ -0,0 +1,162 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.machinist.datasource.ReadWriteRoutingDataSource;
+import com.github.boardyb.machinist.machine.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the calls of the machine API on a dedicated executor, sized to the connection pool, so request threads are
+ * not blocked on the database. The executor has a bounded queue, and operations can have their own concurrency
+ * limits with {@code machinist.bulkhead.limits.<operationId>}. A call which does not fit into either of them is
+ * rejected right away with {@link ServiceOverloadedException}, so the application sheds load instead of piling up
+ * requests. The routing of the data source and the context of the log are handed over to the executor with the
+ * calls. The queue depth, the active calls and the rejections are published as metrics.
+ * <p>
+ * When the bulkhead is disabled, calls are executed on the request thread.
+ */
+@Slf4j
+@Component
+public class MachineBulkhead implements MeterBinder {
+
+    static final String METRIC_PREFIX = "machinist.bulkhead";
+    static final String QUEUE_FULL = "queue-full";
+    static final String LIMIT_REACHED = "limit-reached";
+
+    private final boolean enabled;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Semaphore> operationLimits;
+    private final long retryAfterSeconds;
+    private final Map<String, Counter> rejectionCounters = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+
+    @Autowired
+    public MachineBulkhead(@Value("${machinist.bulkhead.enabled:true}") boolean enabled,
+                           @Value("${machinist.bulkhead.threads:10}") int threads,
+                           @Value("${machinist.bulkhead.queue-capacity:100}") int queueCapacity,
+                           @Value("${machinist.bulkhead.retry-after:PT1S}") Duration retryAfter,
+                           Environment environment) {
+        this(enabled, threads, queueCapacity, retryAfter, Binder.get(environment)
+                .bind("machinist.bulkhead.limits", Bindable.mapOf(String.class, Integer.class))
+                .orElse(Collections.emptyMap()));
+    }
+
+    MachineBulkhead(boolean enabled, int threads, int queueCapacity, Duration retryAfter, Map<String, Integer> limits) {
+        this.enabled = enabled;
+        this.executor = enabled
+                ? new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("machine-bulkhead-"))
+                : null;
+        this.operationLimits = new HashMap<>();
+        limits.forEach((operation, limit) -> this.operationLimits.put(operation, new Semaphore(limit)));
+        this.retryAfterSeconds = Math.max(1, retryAfter.getSeconds());
+    }
+
+    /**
+     * Executes the call of the provided operation on the executor of the bulkhead.
+     *
+     * @return future of the result of the call, which is completed exceptionally if the call failed.
+     * @throws ServiceOverloadedException if the queue of the executor is full or the operation
+     *                                    has reached its concurrency limit.
+     */
+    public <T> CompletableFuture<T> submit(String operation, Supplier<T> call) throws ServiceOverloadedException {
+        if (!this.enabled) {
+            return CompletableFuture.completedFuture(call.get());
+        }
+        Semaphore limit = this.operationLimits.get(operation);
+        if (limit != null && !limit.tryAcquire()) {
+            throw reject(operation, LIMIT_REACHED);
+        }
+        boolean primaryForced = ReadWriteRoutingDataSource.isPrimaryForced();
+        Map<String, String> logContext = MDC.getCopyOfContextMap();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            this.executor.execute(() -> {
+                ReadWriteRoutingDataSource.setPrimaryForced(primaryForced);
+                if (logContext != null) {
+                    MDC.setContextMap(logContext);
+                }
+                try {
+                    future.complete(call.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    ReadWriteRoutingDataSource.setPrimaryForced(false);
+                    MDC.clear();
+                    if (limit != null) {
+                        limit.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (limit != null) {
+                limit.release();
+            }
+            throw reject(operation, QUEUE_FULL);
+        }
+        return future;
+    }
+
+    private ServiceOverloadedException reject(String operation, String reason) {
+        MeterRegistry registry = this.meterRegistry;
+        if (registry != null) {
+            String key = operation + '|' + reason;
+            Counter counter = this.rejectionCounters.get(key);
+            if (counter == null) {
+                counter = this.rejectionCounters.computeIfAbsent(key, k -> Counter.builder(METRIC_PREFIX + ".rejections")
+                        .description("Calls rejected by the bulkhead of the machine API")
+                        .tag("operation", operation)
+                        .tag("reason", reason)
+                        .register(registry));
+            }
+            counter.increment();
+        }
+        log.debug("Rejected call of operation [{}], reason: [{}]", operation, reason);
+        return new ServiceOverloadedException(operation, this.retryAfterSeconds);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+        if (this.executor != null) {
+            Gauge.builder(METRIC_PREFIX + ".queue.depth", this.executor, executor -> executor.getQueue().size())
+                    .description("Calls waiting in the queue of the bulkhead")
+                    .register(registry);
+            Gauge.builder(METRIC_PREFIX + ".active", this.executor, ThreadPoolExecutor::getActiveCount)
+                    .description("Calls being executed by the bulkhead")
+                    .register(registry);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+}
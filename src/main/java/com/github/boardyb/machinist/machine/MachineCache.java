@@ -0,0 +1,149 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.boardyb.machinist.datasource.ReadWriteRoutingDataSource;
+import com.github.boardyb.restmodel.MachineTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Bounded in-process cache of machines by id. Missing machines are cached as well, but only for a short time,
+ * so repeated lookups of not existing ids do not reach the database.
+ * Cached DTOs are shared between callers and must not be modified.
+ * The size and statistics of the cache are published as the cache metrics of {@value #CACHE_NAME}.
+ */
+@Slf4j
+@Component
+public class MachineCache implements MeterBinder {
+
+    static final String CACHE_NAME = "machine";
+
+    private final boolean enabled;
+    private final Cache<String, Optional<MachineTO>> cache;
+
+    @Autowired
+    public MachineCache(@Value("${machinist.cache.machine.enabled:true}") boolean enabled,
+                        @Value("${machinist.cache.machine.maximum-size:10000}") long maximumSize,
+                        @Value("${machinist.cache.machine.ttl:PT5M}") Duration ttl,
+                        @Value("${machinist.cache.machine.negative-ttl:PT5S}") Duration negativeTtl) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new PresenceBasedExpiry(ttl.toNanos(), negativeTtl.toNanos()))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached machine with the provided id or loads it with the provided function if it is not cached.
+     * Concurrent lookups of the same id share a single load. The load reads from the primary database, since a
+     * replica which lags behind a write would put the previous state of the machine back into the cache after the
+     * write invalidated it, so the loader must not run in a transaction which already holds a connection.
+     */
+    public Optional<MachineTO> get(String id, Function<String, Optional<MachineTO>> loader) {
+        if (!this.enabled) {
+            return loader.apply(id);
+        }
+        return this.cache.get(id, machineId -> loadFromPrimary(machineId, loader));
+    }
+
+    private static Optional<MachineTO> loadFromPrimary(String id, Function<String, Optional<MachineTO>> loader) {
+        boolean primaryForced = ReadWriteRoutingDataSource.isPrimaryForced();
+        ReadWriteRoutingDataSource.setPrimaryForced(true);
+        try {
+            return loader.apply(id);
+        } finally {
+            ReadWriteRoutingDataSource.setPrimaryForced(primaryForced);
+        }
+    }
+
+    /**
+     * Returns the machine with the provided id if it is cached, without loading it.
+     */
+    public Optional<MachineTO> getIfPresent(String id) {
+        if (!this.enabled) {
+            return Optional.empty();
+        }
+        Optional<MachineTO> machine = this.cache.getIfPresent(id);
+        return machine == null ? Optional.empty() : machine;
+    }
+
+    /**
+     * Removes the machines with the provided ids from the cache. Inside a transaction the entries are removed
+     * once the transaction is completed, so a lookup running concurrently with the transaction can not
+     * put the previous state of a machine back into the cache.
+     */
+    public void invalidate(Collection<String> ids) {
+        if (!this.enabled || ids.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidateAll(ids);
+                }
+            });
+        } else {
+            this.cache.invalidateAll(ids);
+        }
+    }
+
+    public CacheStats stats() {
+        return this.cache.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, this.cache, CACHE_NAME);
+    }
+
+    @Scheduled(fixedDelayString = "${machinist.cache.machine.stats-log-interval:PT5M}")
+    void logStats() {
+        if (this.enabled) {
+            log.info("Machine cache size: [{}], statistics: [{}]", this.cache.estimatedSize(), this.cache.stats());
+        }
+    }
+
+    private static class PresenceBasedExpiry implements Expiry<String, Optional<MachineTO>> {
+
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        PresenceBasedExpiry(long ttlNanos, long negativeTtlNanos) {
+            this.ttlNanos = ttlNanos;
+            this.negativeTtlNanos = negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String id, Optional<MachineTO> machine, long currentTime) {
+            return machine.isPresent() ? this.ttlNanos : this.negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String id, Optional<MachineTO> machine, long currentTime, long currentDuration) {
+            return expireAfterCreate(id, machine, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String id, Optional<MachineTO> machine, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
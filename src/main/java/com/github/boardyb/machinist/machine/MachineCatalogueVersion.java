@@ -0,0 +1,19 @@
+package com.github.boardyb.machinist.machine;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cheap aggregate of the machine table which changes whenever any machine is created, updated or deleted.
+ */
+@Value
+public class MachineCatalogueVersion {
+
+    Long machineCount;
+    LocalDateTime lastUpdatedAt;
+
+    public String toETag() {
+        return "W/\"" + (machineCount == null ? 0 : machineCount) + "-" + lastUpdatedAt + "\"";
+    }
+}
@@ -1,47 +1,229 @@
 package com.github.boardyb.machinist.machine;
 
+import com.github.boardyb.machinist.machine.exception.BatchSizeExceededException;
+import com.github.boardyb.machinist.machine.exception.InvalidTimestampException;
 import com.github.boardyb.restapi.MachineApi;
+import com.github.boardyb.restmodel.BatchCreateMachineResponse;
+import com.github.boardyb.restmodel.BatchCreateMachineResult;
+import com.github.boardyb.restmodel.BulkDeleteMachineRequest;
+import com.github.boardyb.restmodel.BulkOperationResponse;
+import com.github.boardyb.restmodel.BulkUpdateMachineRequest;
 import com.github.boardyb.restmodel.CreateMachineRequest;
+import com.github.boardyb.restmodel.MachineChanges;
+import com.github.boardyb.restmodel.MachinePage;
+import com.github.boardyb.restmodel.MachineRevisionTO;
+import com.github.boardyb.restmodel.MachineSearchPage;
+import com.github.boardyb.restmodel.MachineStats;
 import com.github.boardyb.restmodel.MachineTO;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.validation.Valid;
+import javax.validation.Validator;
 import java.net.URI;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @RestController()
 public class MachineController implements MachineApi {
 
+    static final int MAX_BATCH_SIZE = 1000;
+
     @Autowired
     private MachineService machineService;
 
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private MachineBulkhead machineBulkhead;
+
+    @Autowired
+    private MachineIdempotencyStore machineIdempotencyStore;
+
+    @Override
+    public CompletableFuture<ResponseEntity<Void>> createMachine(@Valid CreateMachineRequest body, String idempotencyKey) {
+        return this.machineBulkhead.submit("createMachine", () -> {
+            String machineId = idempotencyKey == null
+                    ? this.machineService.createMachine(body).getId()
+                    : this.machineIdempotencyStore.createOnce(idempotencyKey, body,
+                    () -> this.machineService.createMachine(body));
+            return ResponseEntity.created(URI.create("/api/machine/" + machineId)).build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<BatchCreateMachineResponse>> createMachines(List<CreateMachineRequest> body) {
+        if (body.size() > MAX_BATCH_SIZE) {
+            throw new BatchSizeExceededException(body.size(), MAX_BATCH_SIZE);
+        }
+        return this.machineBulkhead.submit("createMachines", () -> createValidMachines(body));
+    }
+
+    private ResponseEntity<BatchCreateMachineResponse> createValidMachines(List<CreateMachineRequest> body) {
+        BatchCreateMachineResponse response = new BatchCreateMachineResponse();
+        List<CreateMachineRequest> validRequests = new ArrayList<>();
+        List<BatchCreateMachineResult> validResults = new ArrayList<>();
+        for (int i = 0; i < body.size(); i++) {
+            BatchCreateMachineResult result = new BatchCreateMachineResult().index(i);
+            List<String> errors = validate(body.get(i));
+            if (errors.isEmpty()) {
+                validRequests.add(body.get(i));
+                validResults.add(result.created(true));
+            } else {
+                result.created(false).errors(errors);
+            }
+            response.addResultsItem(result);
+        }
+        List<MachineTO> createdMachines = this.machineService.createMachines(validRequests);
+        for (int i = 0; i < createdMachines.size(); i++) {
+            validResults.get(i).setId(createdMachines.get(i).getId());
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    private List<String> validate(CreateMachineRequest createMachineRequest) {
+        if (createMachineRequest == null) {
+            List<String> errors = new ArrayList<>();
+            errors.add("must not be null");
+            return errors;
+        }
+        return this.validator.validate(createMachineRequest).stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<Void>> deleteMachine(String machineId) {
+        return this.machineBulkhead.submit("deleteMachine", () -> {
+            this.machineService.deleteMachineById(machineId);
+            return ResponseEntity.ok().build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<BulkOperationResponse>> deleteMachines(@Valid BulkDeleteMachineRequest body) {
+        return this.machineBulkhead.submit("deleteMachines",
+                () -> ResponseEntity.ok(this.machineService.deleteMachines(body.getIds())));
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<List<MachineTO>>> getAllMachines(String ifNoneMatch, List<String> fields) {
+        Set<MachineField> machineFields = MachineField.parse(fields);
+        return this.machineBulkhead.submit("getAllMachines", () -> {
+            String eTag = this.machineService.getCatalogueVersion().toETag();
+            if (matchesETag(ifNoneMatch, eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+            return ResponseEntity.ok().eTag(eTag).body(this.machineService.getAllMachines(machineFields));
+        });
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<MachinePage>> getMachinePage(String cursor, Integer limit, List<String> fields) {
+        Set<MachineField> machineFields = MachineField.parse(fields);
+        return this.machineBulkhead.submit("getMachinePage",
+                () -> ResponseEntity.ok(this.machineService.getMachinePage(cursor, limit, machineFields)));
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<MachineChanges>> getMachineChanges(String since, Integer limit) {
+        return this.machineBulkhead.submit("getMachineChanges",
+                () -> ResponseEntity.ok(this.machineService.getMachineChanges(since, limit)));
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<MachineTO>> getMachineById(String machineId, String ifNoneMatch, List<String> fields) {
+        Set<MachineField> machineFields = MachineField.parse(fields);
+        return this.machineBulkhead.submit("getMachineById", () -> {
+            if (ifNoneMatch != null) {
+                Optional<String> eTag = this.machineService.getMachineVersion(machineId).map(MachineController::toETag);
+                if (eTag.isPresent() && matchesETag(ifNoneMatch, eTag.get())) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag.get()).build();
+                }
+            }
+            MachineTO machine = this.machineService.getMachineById(machineId, machineFields);
+            return ResponseEntity.ok().eTag(toETag(machine.getVersion())).body(machine);
+        });
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<List<MachineRevisionTO>>> getMachineHistory(String machineId) {
+        return this.machineBulkhead.submit("getMachineHistory",
+                () -> ResponseEntity.ok(this.machineService.getMachineHistory(machineId)));
+    }
+
     @Override
-    public ResponseEntity<Void> createMachine(@Valid CreateMachineRequest body) {
-        MachineTO machine = this.machineService.createMachine(body);
-        return ResponseEntity.created(URI.create("/api/machine/" + machine.getId())).build();
+    public CompletableFuture<ResponseEntity<MachineStats>> getMachineStats() {
+        return this.machineBulkhead.submit("getMachineStats",
+                () -> ResponseEntity.ok(this.machineService.getMachineStats()));
     }
 
     @Override
-    public ResponseEntity<Void> deleteMachine(String machineId) {
-        this.machineService.deleteMachineById(machineId);
-        return ResponseEntity.ok().build();
+    public CompletableFuture<ResponseEntity<MachinePage>> getMachinesAsOf(String timestamp, String cursor, Integer limit) {
+        LocalDateTime asOf;
+        try {
+            asOf = LocalDateTime.parse(timestamp);
+        } catch (DateTimeParseException e) {
+            throw new InvalidTimestampException(timestamp);
+        }
+        return this.machineBulkhead.submit("getMachinesAsOf",
+                () -> ResponseEntity.ok(this.machineService.getMachinesAsOf(asOf, cursor, limit)));
+    }
+
+    /**
+     * The ETags are weak, since the same version of the machines is served in several formats, encodings and
+     * selections of fields. A strong ETag would also prevent the compression of the response. The ETag does not
+     * depend on the format, caches keep the formats apart by the {@code Vary: Accept} header of the responses.
+     */
+    private static String toETag(Long version) {
+        return "W/\"" + version + "\"";
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaqueTag = withoutWeakPrefix(eTag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = withoutWeakPrefix(candidate.trim());
+            if (trimmed.equals("*") || trimmed.equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String withoutWeakPrefix(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
     }
 
     @Override
-    public ResponseEntity<List<MachineTO>> getAllMachines() {
-        return ResponseEntity.ok(this.machineService.getAllMachines());
+    public CompletableFuture<ResponseEntity<MachineSearchPage>> searchMachines(String q, Integer page, Integer size) {
+        return this.machineBulkhead.submit("searchMachines",
+                () -> ResponseEntity.ok(this.machineService.searchMachines(q, page, size)));
     }
 
     @Override
-    public ResponseEntity<MachineTO> getMachineById(String machineId) {
-        return ResponseEntity.ok(this.machineService.getMachineById(machineId));
+    public CompletableFuture<ResponseEntity<Void>> updateMachine(@Valid MachineTO body) {
+        return this.machineBulkhead.submit("updateMachine", () -> {
+            this.machineService.updateMachine(body);
+            return ResponseEntity.ok().location(URI.create("/api/machine/" + body.getId())).build();
+        });
     }
 
     @Override
-    public ResponseEntity<Void> updateMachine(@Valid MachineTO body) {
-        this.machineService.updateMachine(body);
-        return ResponseEntity.ok().location(URI.create("/api/machine/" + body.getId())).build();
+    public CompletableFuture<ResponseEntity<BulkOperationResponse>> updateMachines(@Valid BulkUpdateMachineRequest body) {
+        return this.machineBulkhead.submit("updateMachines",
+                () -> ResponseEntity.ok(this.machineService.updateMachines(body)));
     }
 }
@@ -0,0 +1,53 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.machinist.machine.exception.InvalidCursorException;
+import com.github.boardyb.restmodel.MachineTO;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of a machine in the ordering by (updatedAt, id), which marks the end of a page or the watermark of
+ * the changes of machines. It is handed out to clients as an opaque, URL safe string.
+ */
+@Value
+class MachineCursor {
+
+    private static final String SEPARATOR = "|";
+
+    LocalDateTime updatedAt;
+    String id;
+
+    static MachineCursor of(MachineTO machine) {
+        return new MachineCursor(machine.getUpdatedAt(), machine.getId());
+    }
+
+    static MachineCursor of(MachineDelta delta) {
+        return new MachineCursor(delta.getUpdatedAt(), delta.getId());
+    }
+
+    static MachineCursor decode(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separatorIndex = decoded.indexOf(SEPARATOR);
+            if (separatorIndex < 0) {
+                throw new InvalidCursorException(cursor);
+            }
+            String id = decoded.substring(separatorIndex + 1);
+            if (!Machine.isWellFormedId(id)) {
+                throw new InvalidCursorException(cursor);
+            }
+            return new MachineCursor(LocalDateTime.parse(decoded.substring(0, separatorIndex)), id);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
+
+    String encode() {
+        String raw = updatedAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.restmodel.MachineTO;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A changed machine as read by the delta sync, which is either a live machine or the tombstone of a deleted one.
+ * It can be instantiated by a JPQL constructor expression like {@link ProjectedMachineTO}.
+ */
+@Getter
+public class MachineDelta {
+
+    private final MachineTO machine;
+    private final boolean deleted;
+
+    public MachineDelta(String id,
+                        LocalDateTime createdAt,
+                        LocalDateTime updatedAt,
+                        String name,
+                        String description,
+                        Integer yearOfProduction,
+                        long version,
+                        boolean deleted) {
+        this.machine = new ProjectedMachineTO(id, createdAt, updatedAt, name, description, yearOfProduction, version);
+        this.deleted = deleted;
+    }
+
+    public String getId() {
+        return this.machine.getId();
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return this.machine.getUpdatedAt();
+    }
+}
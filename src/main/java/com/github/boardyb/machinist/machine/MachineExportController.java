@@ -0,0 +1,56 @@
+package com.github.boardyb.machinist.machine;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.boardyb.restmodel.MachineTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams the whole machine catalogue as newline delimited JSON while the rows are read from the database.
+ * It is not part of the generated {@link com.github.boardyb.restapi.MachineApi} since the generated
+ * operations can only return fully materialized response bodies.
+ */
+@RestController
+public class MachineExportController {
+
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    private static final int FLUSH_INTERVAL = 500;
+
+    @Autowired
+    private MachineService machineService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @GetMapping(value = "/api/machine/export", produces = APPLICATION_NDJSON_VALUE)
+    public void exportMachines(HttpServletResponse response) throws IOException {
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        ObjectWriter writer = this.objectMapper.writerFor(MachineTO.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = this.objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setRootValueSeparator(null);
+            int[] written = {0};
+            this.machineService.exportMachines(machineTO -> {
+                try {
+                    writer.writeValue(generator, machineTO);
+                    generator.writeRaw('\n');
+                    if (written[0]++ % FLUSH_INTERVAL == 0) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
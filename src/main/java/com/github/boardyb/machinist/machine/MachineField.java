@@ -0,0 +1,89 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.machinist.machine.exception.InvalidFieldsException;
+import com.github.boardyb.restmodel.MachineTO;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Fields of a machine which can be selected by clients. The name of each field is both the name of the property
+ * of {@link MachineTO} and of the attribute of {@link Machine}.
+ */
+public enum MachineField {
+
+    ID("id", MachineTO::getId, (machine, value) -> machine.setId((String) value)),
+    CREATED_AT("createdAt", MachineTO::getCreatedAt, (machine, value) -> machine.setCreatedAt((LocalDateTime) value)),
+    UPDATED_AT("updatedAt", MachineTO::getUpdatedAt, (machine, value) -> machine.setUpdatedAt((LocalDateTime) value)),
+    NAME("name", MachineTO::getName, (machine, value) -> machine.setName((String) value)),
+    DESCRIPTION("description", MachineTO::getDescription, (machine, value) -> machine.setDescription((String) value)),
+    YEAR_OF_PRODUCTION("yearOfProduction", MachineTO::getYearOfProduction,
+            (machine, value) -> machine.setYearOfProduction((Integer) value)),
+    VERSION("version", MachineTO::getVersion, (machine, value) -> machine.setVersion((Long) value));
+
+    private final String fieldName;
+    private final Function<MachineTO, Object> getter;
+    private final BiConsumer<MachineTO, Object> setter;
+
+    MachineField(String fieldName, Function<MachineTO, Object> getter, BiConsumer<MachineTO, Object> setter) {
+        this.fieldName = fieldName;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    public String getFieldName() {
+        return this.fieldName;
+    }
+
+    Object get(MachineTO machine) {
+        return this.getter.apply(machine);
+    }
+
+    void set(MachineTO machine, Object value) {
+        this.setter.accept(machine, value);
+    }
+
+    /**
+     * Parses the names of fields requested by a client.
+     *
+     * @return the requested fields or null if no fields were requested, which means every field.
+     * @throws InvalidFieldsException if any of the names is not the name of a field.
+     */
+    public static Set<MachineField> parse(List<String> fieldNames) throws InvalidFieldsException {
+        if (fieldNames == null || fieldNames.isEmpty()) {
+            return null;
+        }
+        Set<MachineField> fields = EnumSet.noneOf(MachineField.class);
+        List<String> unknownFields = new ArrayList<>();
+        for (String fieldName : fieldNames) {
+            MachineField field = byName(fieldName.trim());
+            if (field == null) {
+                unknownFields.add(fieldName);
+            } else {
+                fields.add(field);
+            }
+        }
+        if (!unknownFields.isEmpty()) {
+            throw new InvalidFieldsException(unknownFields, Arrays.stream(values())
+                    .map(MachineField::getFieldName)
+                    .collect(Collectors.toList()));
+        }
+        return fields;
+    }
+
+    private static MachineField byName(String fieldName) {
+        for (MachineField field : values()) {
+            if (field.fieldName.equals(fieldName)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
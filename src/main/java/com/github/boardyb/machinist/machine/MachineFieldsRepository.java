@@ -0,0 +1,22 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.restmodel.MachineTO;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Queries of machines which select only the columns of the fields requested by the client, besides the id and
+ * the last update which are needed for paging. The machines are returned as {@link SparseMachineTO}s.
+ */
+public interface MachineFieldsRepository {
+
+    List<MachineTO> findAllWithFields(Set<MachineField> fields);
+
+    /**
+     * Fetches a page of machines in the (updatedAt desc, id desc) order after the provided position,
+     * or the first page if the position is null.
+     */
+    List<MachineTO> findPageWithFields(Set<MachineField> fields, LocalDateTime updatedAt, String id, int limit);
+}
@@ -0,0 +1,74 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.restmodel.MachineTO;
+import org.hibernate.FlushMode;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hibernate.jpa.QueryHints.HINT_FLUSH_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+class MachineFieldsRepositoryImpl implements MachineFieldsRepository {
+
+    private static final String LIVE_MACHINES = "WHERE m.deleted = false ";
+    private static final String ORDER = "ORDER BY m.updatedAt DESC, m.id DESC";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<MachineTO> findAllWithFields(Set<MachineField> fields) {
+        List<MachineField> selectedFields = selectedFields(fields);
+        TypedQuery<Object[]> query = createQuery(selectedFields, LIVE_MACHINES + ORDER);
+        return toMachines(query.getResultList(), selectedFields, fields);
+    }
+
+    @Override
+    public List<MachineTO> findPageWithFields(Set<MachineField> fields, LocalDateTime updatedAt, String id, int limit) {
+        List<MachineField> selectedFields = selectedFields(fields);
+        TypedQuery<Object[]> query;
+        if (updatedAt == null) {
+            query = createQuery(selectedFields, LIVE_MACHINES + ORDER);
+        } else {
+            query = createQuery(selectedFields, LIVE_MACHINES + "AND (m.updatedAt, m.id) < (:updatedAt, :id) " + ORDER)
+                    .setParameter("updatedAt", updatedAt)
+                    .setParameter("id", id);
+        }
+        query.setMaxResults(limit);
+        return toMachines(query.getResultList(), selectedFields, fields);
+    }
+
+    private TypedQuery<Object[]> createQuery(List<MachineField> selectedFields, String condition) {
+        String columns = selectedFields.stream()
+                .map(field -> "m." + field.getFieldName())
+                .collect(Collectors.joining(", "));
+        return this.entityManager.createQuery("SELECT " + columns + " FROM Machine m " + condition, Object[].class)
+                .setHint(HINT_READONLY, true)
+                .setHint(HINT_FLUSH_MODE, FlushMode.MANUAL);
+    }
+
+    /**
+     * The requested fields in a stable order, together with the id and the last update.
+     */
+    private static List<MachineField> selectedFields(Set<MachineField> fields) {
+        Set<MachineField> selectedFields = EnumSet.of(MachineField.ID, MachineField.UPDATED_AT);
+        selectedFields.addAll(fields);
+        return new ArrayList<>(selectedFields);
+    }
+
+    private static List<MachineTO> toMachines(List<Object[]> rows, List<MachineField> selectedFields, Set<MachineField> fields) {
+        List<MachineTO> machines = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            machines.add(SparseMachineTO.fromRow(row, selectedFields, fields));
+        }
+        return machines;
+    }
+}
@@ -0,0 +1,162 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.boardyb.machinist.machine.exception.IdempotencyKeyReusedException;
+import com.github.boardyb.machinist.machine.exception.InvalidIdempotencyKeyException;
+import com.github.boardyb.restmodel.CreateMachineRequest;
+import com.github.boardyb.restmodel.MachineTO;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Remembers which machine was created by the first request with an idempotency key, so retries of the request
+ * return the same machine instead of creating it again. The keys are kept for the time to live in a bounded
+ * in-process cache, which serves the retries without reaching the database, and in a table, which serves them
+ * on every instance and after restarts.
+ * Concurrent requests with the same key on one instance wait for the first of them and return its machine, so the
+ * machine is created once. Concurrent requests with the same key on several instances are stopped by the primary
+ * key of the table, which rolls back their creation. The keys are always looked up in the transactions which store
+ * them, so they are read from the primary database even when reads are routed to replicas.
+ */
+@Slf4j
+@Component
+public class MachineIdempotencyStore {
+
+    static final int MAX_KEY_LENGTH = 100;
+
+    private final IdempotentCreationRepository idempotentCreationRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final Cache<String, IdempotentCreation> cache;
+    private final ConcurrentMap<String, CompletableFuture<IdempotentCreation>> runningCreations =
+            new ConcurrentHashMap<>();
+
+    @Autowired
+    public MachineIdempotencyStore(IdempotentCreationRepository idempotentCreationRepository,
+                                   EntityManager entityManager,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${machinist.idempotency.maximum-size:10000}") long maximumSize,
+                                   @Value("${machinist.idempotency.ttl:PT24H}") Duration ttl) {
+        this.idempotentCreationRepository = idempotentCreationRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttl = ttl;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Creates the machine with the provided function, unless a machine was already created with the provided key.
+     * The function is called in the transaction which stores the key.
+     *
+     * @return the id of the machine created with the key.
+     * @throws InvalidIdempotencyKeyException if the key is blank or longer than {@value #MAX_KEY_LENGTH} characters.
+     * @throws IdempotencyKeyReusedException  if the key was used with a request with different fields.
+     */
+    public String createOnce(String idempotencyKey, CreateMachineRequest request, Supplier<MachineTO> creation) {
+        if (idempotencyKey.trim().isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException(idempotencyKey, MAX_KEY_LENGTH);
+        }
+        String requestHash = hash(request);
+        IdempotentCreation creationOfKey = this.cache.getIfPresent(idempotencyKey);
+        if (creationOfKey == null) {
+            creationOfKey = findOrCreateOnce(idempotencyKey, requestHash, creation);
+        }
+        if (!creationOfKey.getRequestHash().equals(requestHash)) {
+            throw new IdempotencyKeyReusedException(idempotencyKey);
+        }
+        return creationOfKey.getMachineId();
+    }
+
+    /**
+     * Finds or creates the machine of the key, unless another request with the key is already doing it on this
+     * instance, in which case the machine of that request is returned. The running request is removed when it
+     * completes, and the waiting requests try again if it failed.
+     */
+    private IdempotentCreation findOrCreateOnce(String idempotencyKey, String requestHash,
+                                                Supplier<MachineTO> creation) {
+        while (true) {
+            CompletableFuture<IdempotentCreation> ownCreation = new CompletableFuture<>();
+            CompletableFuture<IdempotentCreation> runningCreation =
+                    this.runningCreations.putIfAbsent(idempotencyKey, ownCreation);
+            if (runningCreation == null) {
+                try {
+                    IdempotentCreation creationOfKey = findOrCreate(idempotencyKey, requestHash, creation);
+                    this.cache.put(idempotencyKey, creationOfKey);
+                    ownCreation.complete(creationOfKey);
+                    return creationOfKey;
+                } catch (RuntimeException e) {
+                    ownCreation.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    this.runningCreations.remove(idempotencyKey, ownCreation);
+                }
+            }
+            log.debug("Waiting for the running creation of machine with idempotency key [{}]", idempotencyKey);
+            IdempotentCreation creationOfKey = runningCreation.exceptionally(e -> null).join();
+            if (creationOfKey != null) {
+                return creationOfKey;
+            }
+        }
+    }
+
+    private IdempotentCreation findOrCreate(String idempotencyKey, String requestHash, Supplier<MachineTO> creation) {
+        try {
+            return this.transactionTemplate.execute(status -> {
+                Optional<IdempotentCreation> storedCreation =
+                        this.idempotentCreationRepository.findById(idempotencyKey);
+                if (storedCreation.isPresent()) {
+                    return storedCreation.get();
+                }
+                IdempotentCreation idempotentCreation = new IdempotentCreation(idempotencyKey, requestHash,
+                        creation.get().getId(), LocalDateTime.now());
+                this.entityManager.persist(idempotentCreation);
+                return idempotentCreation;
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Machine with idempotency key [{}] was created concurrently", idempotencyKey);
+            return this.transactionTemplate.execute(status ->
+                    this.idempotentCreationRepository.findById(idempotencyKey).orElseThrow(() -> e));
+        }
+    }
+
+    private static String hash(CreateMachineRequest request) {
+        String fields = request.getName() + '\u0000' + request.getDescription() + '\u0000'
+                + Objects.toString(request.getYearOfProduction(), "");
+        return Hashing.sha256().hashString(fields, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Deletes the stored keys which are older than the time to live.
+     */
+    @Scheduled(fixedDelayString = "${machinist.idempotency.purge-interval:PT1H}")
+    public int purgeExpiredKeys() {
+        LocalDateTime createdBefore = LocalDateTime.now().minus(this.ttl);
+        int purged = this.transactionTemplate.execute(status ->
+                this.idempotentCreationRepository.deleteCreatedBefore(createdBefore));
+        log.debug("Purged [{}] idempotency keys created before [{}]", purged, createdBefore);
+        return purged;
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.restmodel.MachineTO;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Function;
+
+/**
+ * A log argument which describes a collection of machines by their count and the ids of the first few of them,
+ * instead of rendering every machine. It is only rendered when the message is logged, so it costs nothing when
+ * the log level is disabled.
+ */
+final class MachineLogSummary<T> {
+
+    static final int MAX_IDS = 10;
+
+    private final Collection<T> items;
+    private final Function<T, String> idOf;
+
+    private MachineLogSummary(Collection<T> items, Function<T, String> idOf) {
+        this.items = items;
+        this.idOf = idOf;
+    }
+
+    static MachineLogSummary<MachineTO> ofMachines(Collection<MachineTO> machines) {
+        return new MachineLogSummary<>(machines, MachineTO::getId);
+    }
+
+    static MachineLogSummary<String> ofIds(Collection<String> ids) {
+        return new MachineLogSummary<>(ids, Function.identity());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder()
+                .append(this.items.size())
+                .append(" machines with ids [");
+        Iterator<T> iterator = this.items.iterator();
+        for (int i = 0; i < MAX_IDS && iterator.hasNext(); i++) {
+            if (i > 0) {
+                summary.append(", ");
+            }
+            summary.append(this.idOf.apply(iterator.next()));
+        }
+        if (this.items.size() > MAX_IDS) {
+            summary.append(", ...");
+        }
+        return summary.append(']').toString();
+    }
+}
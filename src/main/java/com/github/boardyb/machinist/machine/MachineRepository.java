@@ -1,13 +1,205 @@
 package com.github.boardyb.machinist.machine;
 
+import com.github.boardyb.restmodel.MachineTO;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface MachineRepository extends CrudRepository<Machine, String> {
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_FLUSH_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+public interface MachineRepository extends CrudRepository<Machine, String>, MachineFieldsRepository {
+
+    String EXPORT_FETCH_SIZE = "500";
+
+    /**
+     * Selects the columns of machines straight into DTOs, so no entities are managed, snapshotted or dirty checked.
+     */
+    String MACHINE_TO_PROJECTION = "SELECT new com.github.boardyb.machinist.machine.ProjectedMachineTO(" +
+            "m.id, m.createdAt, m.updatedAt, m.name, m.description, m.yearOfProduction, m.version) " +
+            "FROM Machine m ";
+
+    /**
+     * Like {@link #MACHINE_TO_PROJECTION}, but includes deleted machines with their deleted flag.
+     */
+    String MACHINE_DELTA_PROJECTION = "SELECT new com.github.boardyb.machinist.machine.MachineDelta(" +
+            "m.id, m.createdAt, m.updatedAt, m.name, m.description, m.yearOfProduction, m.version, m.deleted) " +
+            "FROM Machine m ";
+
+    String MACHINE_YEAR_COUNT_PROJECTION = "SELECT new com.github.boardyb.machinist.machine.MachineYearCount(" +
+            "m.yearOfProduction, COUNT(m)) FROM Machine m ";
 
     List<Machine> findAllByDeletedFalseOrderByUpdatedAtDesc();
 
+    @QueryHints({
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query(MACHINE_TO_PROJECTION + "WHERE m.deleted = false ORDER BY m.updatedAt DESC")
+    List<MachineTO> findAllProjectedByDeletedFalse();
+
+    @QueryHints({
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query(MACHINE_TO_PROJECTION + "WHERE m.deleted = false ORDER BY m.updatedAt DESC, m.id DESC")
+    List<MachineTO> findFirstPage(Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query(MACHINE_TO_PROJECTION + "WHERE m.deleted = false AND (m.updatedAt, m.id) < (:updatedAt, :id) " +
+            "ORDER BY m.updatedAt DESC, m.id DESC")
+    List<MachineTO> findPageAfter(@Param("updatedAt") LocalDateTime updatedAt,
+                                  @Param("id") String id,
+                                  Pageable pageable);
+
+    /**
+     * Fetches the changes of machines, including deletions, modified before the provided time in the
+     * (updatedAt, id) order, which is served by the index on the same columns.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query(MACHINE_DELTA_PROJECTION + "WHERE m.updatedAt < :until ORDER BY m.updatedAt ASC, m.id ASC")
+    List<MachineDelta> findFirstChanges(@Param("until") LocalDateTime until, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query(MACHINE_DELTA_PROJECTION + "WHERE (m.updatedAt, m.id) > (:updatedAt, :id) AND m.updatedAt < :until " +
+            "ORDER BY m.updatedAt ASC, m.id ASC")
+    List<MachineDelta> findChangesAfter(@Param("updatedAt") LocalDateTime updatedAt,
+                                        @Param("id") String id,
+                                        @Param("until") LocalDateTime until,
+                                        Pageable pageable);
+
+    /**
+     * Locks the machine until the end of the transaction, so it is locked before the counters of
+     * {@link MachineStatistics}, like by the bulk updates and deletions.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
     Optional<Machine> findByIdAndDeletedFalse(String id);
+
+    @QueryHints({
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query(MACHINE_TO_PROJECTION + "WHERE m.id = :id AND m.deleted = false")
+    Optional<MachineTO> findProjectedById(@Param("id") String id);
+
+    @Query("SELECT m.version FROM Machine m WHERE m.id = :id AND m.deleted = false")
+    Optional<Long> findVersionById(@Param("id") String id);
+
+    /**
+     * Aggregates the number of machines which are not deleted and the last modification of any machine,
+     * including the deleted ones, which together change on every write.
+     */
+    @Query("SELECT new com.github.boardyb.machinist.machine.MachineCatalogueVersion(" +
+            "SUM(CASE WHEN m.deleted = false THEN 1 ELSE 0 END), MAX(m.updatedAt)) " +
+            "FROM Machine m")
+    MachineCatalogueVersion findCatalogueVersion();
+
+    /**
+     * Counts the machines which are not deleted by year of production, used to reconcile the counters of
+     * {@link MachineStatistics}.
+     */
+    @Query(MACHINE_YEAR_COUNT_PROJECTION + "WHERE m.deleted = false GROUP BY m.yearOfProduction")
+    List<MachineYearCount> countLiveByYearOfProduction();
+
+    @Query("SELECT COUNT(m) FROM Machine m WHERE m.deleted = false " +
+            "AND COALESCE(m.yearOfProduction, " + MachineYearCount.UNKNOWN_YEAR + ") = :yearOfProduction")
+    long countLiveByYearOfProduction(@Param("yearOfProduction") int yearOfProduction);
+
+    /**
+     * Counts the machines with the provided ids by year of production, including the deleted ones.
+     */
+    @Query(MACHINE_YEAR_COUNT_PROJECTION + "WHERE m.id IN (:ids) GROUP BY m.yearOfProduction")
+    List<MachineYearCount> countByYearOfProduction(@Param("ids") Collection<String> ids);
+
+    @Query(value = "SELECT CAST(m.id AS VARCHAR) FROM machinist.machine m " +
+            "WHERE m.id IN (:ids) AND m.deleted = false FOR UPDATE",
+            nativeQuery = true)
+    List<String> lockLiveIds(@Param("ids") Collection<String> ids);
+
+    @Modifying
+    @Query("UPDATE Machine m SET m.deleted = true, m.updatedAt = :updatedAt, m.version = m.version + 1 " +
+            "WHERE m.id = :id AND m.deleted = false")
+    int softDeleteById(@Param("id") String id, @Param("updatedAt") LocalDateTime updatedAt);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Machine m SET m.deleted = true, m.updatedAt = :updatedAt, m.version = m.version + 1 " +
+            "WHERE m.id IN (:ids) AND m.deleted = false")
+    int softDeleteByIds(@Param("ids") Collection<String> ids, @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Locks the ids of at most {@code limit} machines which were deleted before the provided time, oldest first.
+     * Instances archiving concurrently wait for each other and skip the machines which were archived meanwhile.
+     */
+    @Query(value = "SELECT CAST(m.id AS VARCHAR) FROM machinist.machine m " +
+            "WHERE m.deleted = true AND m.updated_at < :deletedBefore " +
+            "ORDER BY m.updated_at, m.id LIMIT :limit FOR UPDATE",
+            nativeQuery = true)
+    List<String> lockArchivableIds(@Param("deletedBefore") LocalDateTime deletedBefore, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "INSERT INTO machinist.machine_archive " +
+            "(id, created_at, updated_at, name, description, year_of_production, version, archived_at) " +
+            "SELECT m.id, m.created_at, m.updated_at, m.name, m.description, m.year_of_production, m.version, " +
+            "CURRENT_TIMESTAMP FROM machinist.machine m WHERE m.id IN (:ids) AND m.deleted = true",
+            nativeQuery = true)
+    int archiveDeletedByIds(@Param("ids") Collection<String> ids);
+
+    @Modifying
+    @Query("DELETE FROM Machine m WHERE m.id IN (:ids) AND m.deleted = true")
+    int purgeDeletedByIds(@Param("ids") Collection<String> ids);
+
+    /**
+     * Returns the last modification of the archived machines, the deletions before it are no longer in the changes.
+     */
+    @Query("SELECT MAX(a.updatedAt) FROM ArchivedMachine a")
+    LocalDateTime findLastArchivedUpdatedAt();
+
+    /**
+     * Sets the provided fields on every machine with the provided ids, null parameters leave the field unchanged.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Machine m SET " +
+            "m.name = COALESCE(:name, m.name), " +
+            "m.description = COALESCE(:description, m.description), " +
+            "m.yearOfProduction = COALESCE(:yearOfProduction, m.yearOfProduction), " +
+            "m.updatedAt = :updatedAt, " +
+            "m.version = m.version + 1 " +
+            "WHERE m.id IN (:ids) AND m.deleted = false")
+    int updateByIds(@Param("ids") Collection<String> ids,
+                    @Param("name") String name,
+                    @Param("description") String description,
+                    @Param("yearOfProduction") Integer yearOfProduction,
+                    @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Streams all machines which are not deleted through a database cursor which fetches
+     * {@value #EXPORT_FETCH_SIZE} rows at a time. Must be called and consumed within a transaction.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    Stream<Machine> streamAllByDeletedFalse();
 }
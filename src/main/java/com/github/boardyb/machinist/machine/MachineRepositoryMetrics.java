@@ -0,0 +1,66 @@
+package com.github.boardyb.machinist.machine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every invocation of {@link MachineRepository} methods as {@value #METRIC_NAME}, tagged with the name of the
+ * method and the exception it has thrown. The timers of successful invocations are looked up once per method,
+ * so the instrumentation does not allocate on the hot path.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "machinist.metrics.enabled", matchIfMissing = true)
+public class MachineRepositoryMetrics {
+
+    static final String METRIC_NAME = "machinist.repository.invocations";
+    private static final String NO_EXCEPTION = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MachineRepositoryMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("this(com.github.boardyb.machinist.machine.MachineRepository)")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        long start = this.meterRegistry.config().clock().monotonicTime();
+        try {
+            Object result = joinPoint.proceed();
+            successTimer(method).record(this.meterRegistry.config().clock().monotonicTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            timer(method, e.getClass().getSimpleName())
+                    .record(this.meterRegistry.config().clock().monotonicTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Timer successTimer(Method method) {
+        Timer timer = this.timers.get(method);
+        return timer != null ? timer : this.timers.computeIfAbsent(method, key -> timer(key, NO_EXCEPTION));
+    }
+
+    private Timer timer(Method method, String exception) {
+        return Timer.builder(METRIC_NAME)
+                .description("Invocations of the machine repository")
+                .tag("method", method.getName())
+                .tag("exception", exception)
+                .register(this.meterRegistry);
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.machinist.machine.event.MachineChangeType;
+import com.github.boardyb.restmodel.MachineRevisionTO;
+import com.github.boardyb.restmodel.MachineTO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * An entry of the append-only log of the changes of machines. The revision is the version of the machine after the
+ * change, and only the fields set by the change are stored, the others are left null.
+ */
+@Data
+@Entity
+@Table(name = "machine_revision", schema = "machinist")
+@IdClass(MachineRevision.Key.class)
+@NoArgsConstructor
+public class MachineRevision {
+
+    /**
+     * The fields of a machine which can be changed by clients.
+     */
+    static final Set<MachineField> CHANGEABLE_FIELDS =
+            Collections.unmodifiableSet(EnumSet.of(MachineField.NAME, MachineField.DESCRIPTION, MachineField.YEAR_OF_PRODUCTION));
+
+    @Id
+    @Column(name = "machine_id")
+    private String machineId;
+
+    @Id
+    @Column(name = "revision")
+    private long revision;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false)
+    private MachineChangeType changeType;
+
+    @Column(name = "changed_at", nullable = false)
+    private LocalDateTime changedAt;
+
+    /**
+     * Comma separated names of the fields set by the change.
+     */
+    @Column(name = "changed_fields")
+    private String changedFields;
+
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "description")
+    private String description;
+
+    @Column(name = "year_of_production")
+    private Integer yearOfProduction;
+
+    public MachineRevision(String machineId, long revision, LocalDateTime changedAt) {
+        this.machineId = machineId;
+        this.revision = revision;
+        this.changedAt = changedAt;
+    }
+
+    /**
+     * Creates the revision of a change which set the provided fields of the machine to their current values.
+     */
+    static MachineRevision of(Machine machine, long revision, MachineChangeType changeType, LocalDateTime changedAt,
+                              Set<MachineField> fields) {
+        MachineRevision machineRevision = new MachineRevision(machine.getId(), revision, changedAt);
+        machineRevision.setChangeType(changeType);
+        machineRevision.setChanges(fields, machine.getName(), machine.getDescription(), machine.getYearOfProduction());
+        return machineRevision;
+    }
+
+    /**
+     * Stores the provided values of the changed fields, the values of the other fields are dropped.
+     */
+    void setChanges(Set<MachineField> fields, String name, String description, Integer yearOfProduction) {
+        this.changedFields = fields.stream().map(MachineField::getFieldName).collect(Collectors.joining(","));
+        this.name = fields.contains(MachineField.NAME) ? name : null;
+        this.description = fields.contains(MachineField.DESCRIPTION) ? description : null;
+        this.yearOfProduction = fields.contains(MachineField.YEAR_OF_PRODUCTION) ? yearOfProduction : null;
+    }
+
+    Set<MachineField> getChangedFieldSet() {
+        Set<MachineField> fields = this.changedFields == null || this.changedFields.isEmpty()
+                ? null
+                : MachineField.parse(Arrays.asList(this.changedFields.split(",")));
+        return fields == null ? EnumSet.noneOf(MachineField.class) : fields;
+    }
+
+    /**
+     * Applies the change to the state of the machine before it, which is null for the first revision.
+     *
+     * @return the state of the machine after the change, or null if the machine was deleted.
+     */
+    MachineTO applyTo(MachineTO machine) {
+        if (this.changeType == MachineChangeType.DELETED) {
+            return null;
+        }
+        MachineTO changedMachine = machine;
+        if (changedMachine == null) {
+            changedMachine = new MachineTO();
+            changedMachine.setId(this.machineId);
+            changedMachine.setCreatedAt(this.changedAt);
+        }
+        Set<MachineField> fields = getChangedFieldSet();
+        if (fields.contains(MachineField.NAME)) {
+            changedMachine.setName(this.name);
+        }
+        if (fields.contains(MachineField.DESCRIPTION)) {
+            changedMachine.setDescription(this.description);
+        }
+        if (fields.contains(MachineField.YEAR_OF_PRODUCTION)) {
+            changedMachine.setYearOfProduction(this.yearOfProduction);
+        }
+        changedMachine.setUpdatedAt(this.changedAt);
+        changedMachine.setVersion(this.revision);
+        return changedMachine;
+    }
+
+    public MachineRevisionTO toDTO() {
+        MachineRevisionTO revisionTO = new MachineRevisionTO();
+        revisionTO.setMachineId(this.machineId);
+        revisionTO.setRevision(this.revision);
+        revisionTO.setChangeType(MachineRevisionTO.ChangeTypeEnum.valueOf(this.changeType.name()));
+        revisionTO.setChangedAt(this.changedAt);
+        revisionTO.setChangedFields(getChangedFieldSet().stream()
+                .map(MachineField::getFieldName)
+                .collect(Collectors.toList()));
+        revisionTO.setName(this.name);
+        revisionTO.setDescription(this.description);
+        revisionTO.setYearOfProduction(this.yearOfProduction);
+        return revisionTO;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        private String machineId;
+        private long revision;
+    }
+}
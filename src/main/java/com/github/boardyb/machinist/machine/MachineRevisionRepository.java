@@ -0,0 +1,80 @@
+package com.github.boardyb.machinist.machine;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import static org.hibernate.jpa.QueryHints.HINT_FLUSH_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+public interface MachineRevisionRepository extends CrudRepository<MachineRevision, MachineRevision.Key> {
+
+    /**
+     * Selects the last revision of every machine until the provided time, unless it deleted the machine. The last
+     * revision is found through the primary key on (machine_id, revision).
+     */
+    String LAST_REVISION_UNTIL = "SELECT r FROM MachineRevision r WHERE r.changedAt <= :asOf " +
+            "AND r.changeType <> com.github.boardyb.machinist.machine.event.MachineChangeType.DELETED " +
+            "AND r.revision = (SELECT MAX(l.revision) FROM MachineRevision l " +
+            "WHERE l.machineId = r.machineId AND l.changedAt <= :asOf) ";
+
+    /**
+     * Fetches the revisions of a machine in order, which is served by the primary key on (machine_id, revision).
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("SELECT r FROM MachineRevision r WHERE r.machineId = :machineId ORDER BY r.revision ASC")
+    List<MachineRevision> findAllByMachineId(@Param("machineId") String machineId);
+
+    /**
+     * Fetches the last revisions of the machines which existed at the provided time in the (changedAt, machineId)
+     * order, which is served by the index on the same columns.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query(LAST_REVISION_UNTIL + "ORDER BY r.changedAt DESC, r.machineId DESC")
+    List<MachineRevision> findFirstLastRevisionsUntil(@Param("asOf") LocalDateTime asOf, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query(LAST_REVISION_UNTIL + "AND (r.changedAt, r.machineId) < (:changedAt, :machineId) " +
+            "ORDER BY r.changedAt DESC, r.machineId DESC")
+    List<MachineRevision> findLastRevisionsUntilAfter(@Param("asOf") LocalDateTime asOf,
+                                                      @Param("changedAt") LocalDateTime changedAt,
+                                                      @Param("machineId") String machineId,
+                                                      Pageable pageable);
+
+    /**
+     * Fetches the revisions of the provided machines made until the provided time grouped by machine, every machine
+     * in the order of its revisions.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("SELECT r FROM MachineRevision r WHERE r.machineId IN (:machineIds) AND r.changedAt <= :asOf " +
+            "ORDER BY r.machineId ASC, r.revision ASC")
+    List<MachineRevision> findAllByMachineIdsUntil(@Param("machineIds") Collection<String> machineIds,
+                                                   @Param("asOf") LocalDateTime asOf);
+
+    /**
+     * Creates revisions from the current version and modification time of the machines with the provided ids,
+     * for changes which were made by bulk updates.
+     */
+    @Query("SELECT new com.github.boardyb.machinist.machine.MachineRevision(m.id, m.version, m.updatedAt) " +
+            "FROM Machine m WHERE m.id IN (:ids)")
+    List<MachineRevision> findCurrentRevisions(@Param("ids") Collection<String> ids);
+}
@@ -0,0 +1,21 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.restmodel.MachineTO;
+
+import java.util.List;
+
+/**
+ * Finds machines which are not deleted by the text of their name and description.
+ */
+public interface MachineSearch {
+
+    /**
+     * Searches machines matching the provided text.
+     *
+     * @param query  the text to search for.
+     * @param offset the number of best matching machines to skip.
+     * @param limit  the maximum number of machines to return.
+     * @return DTOs of the matching machines, the best matches first.
+     */
+    List<MachineTO> search(String query, int offset, int limit);
+}
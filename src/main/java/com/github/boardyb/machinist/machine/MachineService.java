@@ -1,10 +1,24 @@
 package com.github.boardyb.machinist.machine;
 
+import com.github.boardyb.machinist.machine.exception.InvalidCursorException;
+import com.github.boardyb.machinist.machine.exception.InvalidPageLimitException;
+import com.github.boardyb.machinist.machine.exception.InvalidSearchQueryException;
 import com.github.boardyb.machinist.machine.exception.MachineDoesNotExistException;
+import com.github.boardyb.restmodel.BulkOperationResponse;
+import com.github.boardyb.restmodel.BulkUpdateMachineRequest;
 import com.github.boardyb.restmodel.CreateMachineRequest;
+import com.github.boardyb.restmodel.MachineChanges;
+import com.github.boardyb.restmodel.MachinePage;
+import com.github.boardyb.restmodel.MachineRevisionTO;
+import com.github.boardyb.restmodel.MachineSearchPage;
+import com.github.boardyb.restmodel.MachineStats;
 import com.github.boardyb.restmodel.MachineTO;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Defines operations which are intended to manage machines in the application.
@@ -20,6 +34,72 @@ public interface MachineService {
      */
     List<MachineTO> getAllMachines();
 
+    /**
+     * Fetches all machine records from database, reading only the columns of the provided fields.
+     *
+     * @param fields the fields to fetch or null to fetch every field.
+     * @return list of DTOs of machines, which only write the provided fields to JSON.
+     */
+    List<MachineTO> getAllMachines(Set<MachineField> fields);
+
+    /**
+     * Fetches a bounded page of machine records from database, ordered by last update.
+     * Pages are addressed by a cursor (keyset) instead of an offset, so every page costs the same to fetch.
+     *
+     * @param cursor the cursor returned with the previous page or null to fetch the first page.
+     * @param limit  the maximum number of machines to return.
+     * @return page of machine DTOs and the cursor of the next page, which is missing if there are no more machines.
+     * @throws InvalidCursorException    if the provided cursor cannot be decoded.
+     * @throws InvalidPageLimitException if the limit is not between 1 and {@value MachineServiceImpl#MAX_PAGE_LIMIT}.
+     */
+    MachinePage getMachinePage(String cursor, int limit) throws InvalidCursorException, InvalidPageLimitException;
+
+    /**
+     * Like {@link #getMachinePage(String, int)}, but reads only the columns of the provided fields.
+     *
+     * @param fields the fields to fetch or null to fetch every field.
+     */
+    MachinePage getMachinePage(String cursor, int limit, Set<MachineField> fields)
+            throws InvalidCursorException, InvalidPageLimitException;
+
+    /**
+     * Fetches the machines created, updated or deleted after the provided watermark, oldest change first.
+     * Changes since the start of the oldest write which is still running are left out, since it may commit earlier
+     * modification times, which would fall behind the returned watermark. The changes of the last settle time before
+     * it are left out as well, which covers the skew of the clocks of the application and the database, and the
+     * time between setting the modification time and the first write of a transaction. Where the running writes
+     * cannot be found, a write which takes longer than the settle time may still be skipped.
+     *
+     * @param since the watermark returned by the previous call or null to fetch every change.
+     * @param limit the maximum number of changes to return.
+     * @return DTOs of the created and updated machines, ids of the deleted ones and the watermark of the last change.
+     * @throws InvalidCursorException    if the provided watermark cannot be decoded.
+     * @throws InvalidPageLimitException if the limit is not between 1 and {@value MachineServiceImpl#MAX_PAGE_LIMIT}.
+     */
+    MachineChanges getMachineChanges(String since, int limit) throws InvalidCursorException, InvalidPageLimitException;
+
+    /**
+     * Searches machine records by the text of their name and description.
+     *
+     * @param query the text to search for.
+     * @param page  the zero based index of the page to return.
+     * @param size  the maximum number of machines to return.
+     * @return page of the DTOs of matching machines, the best matches first, and the index of the next page
+     * which is missing if there are no more matches.
+     * @throws InvalidSearchQueryException if the query is blank.
+     * @throws InvalidPageLimitException   if the page is negative or the size is not between 1 and
+     *                                     {@value MachineServiceImpl#MAX_SEARCH_PAGE_SIZE}.
+     */
+    MachineSearchPage searchMachines(String query, int page, int size) throws InvalidSearchQueryException, InvalidPageLimitException;
+
+    /**
+     * Streams all machine records from database to the provided consumer one by one, without keeping the
+     * already consumed records in memory.
+     *
+     * @param consumer receives the DTO of every machine which is not deleted, in no particular order.
+     */
+    void exportMachines(Consumer<MachineTO> consumer);
+
     /**
      * Fetches a single machine from the database.
      *
@@ -29,6 +109,62 @@ public interface MachineService {
      */
     MachineTO getMachineById(String id) throws MachineDoesNotExistException;
 
+    /**
+     * Like {@link #getMachineById(String)}, but returns a DTO which only writes the provided fields to JSON.
+     * Every field of the machine is fetched, since single machines are served from the cache.
+     *
+     * @param fields the fields to return or null to return every field.
+     */
+    MachineTO getMachineById(String id, Set<MachineField> fields) throws MachineDoesNotExistException;
+
+    /**
+     * Fetches the revisions of a single machine, including the ones of deleted machines, oldest first.
+     *
+     * @param id the id field of the machine.
+     * @return DTOs of the revisions, which contain the fields changed by each revision.
+     * @throws MachineDoesNotExistException if there are no revisions of a machine with the provided id.
+     */
+    List<MachineRevisionTO> getMachineHistory(String id) throws MachineDoesNotExistException;
+
+    /**
+     * Rebuilds the state of a page of the machines at the provided time from their revisions. The page is selected
+     * by the last revision of every machine until that time, and only the revisions of the machines of the page
+     * are read to rebuild them.
+     *
+     * @param asOf   the point in time to return the machines of.
+     * @param cursor the cursor returned with the previous page, or null to fetch the first page.
+     * @param limit  the maximum number of machines to return.
+     * @return page of the machines which existed at the provided time, ordered by last update until then, and the
+     * cursor of the next page, which is missing if there are no more machines.
+     * @throws InvalidCursorException    if the provided cursor cannot be decoded.
+     * @throws InvalidPageLimitException if the limit is not between 1 and {@value MachineServiceImpl#MAX_PAGE_LIMIT}.
+     */
+    MachinePage getMachinesAsOf(LocalDateTime asOf, String cursor, int limit)
+            throws InvalidCursorException, InvalidPageLimitException;
+
+    /**
+     * Fetches the version of a single machine without fetching the machine itself.
+     *
+     * @param id the id field of the machine.
+     * @return the version of the machine or empty if cannot find any machines with the provided id.
+     */
+    Optional<Long> getMachineVersion(String id);
+
+    /**
+     * Fetches an aggregate of all machines in the database which changes whenever any machine is modified.
+     *
+     * @return the current version of the list of all machines.
+     */
+    MachineCatalogueVersion getCatalogueVersion();
+
+    /**
+     * Fetches the number of machines in the database by year of production and by age, from counters which are
+     * changed with the machines.
+     *
+     * @return the statistics of all machines which are not deleted.
+     */
+    MachineStats getMachineStats();
+
     /**
      * Deletes a single machine from the database.
      *
@@ -38,7 +174,15 @@ public interface MachineService {
     void deleteMachineById(String id) throws MachineDoesNotExistException;
 
     /**
-     * Creates a new machine with the provided fields.
+     * Deletes every machine with the provided ids from the database with a single statement.
+     *
+     * @param ids the id fields of the machines which will be deleted.
+     * @return the ids of the machines which were deleted and the ids which did not match any stored machines.
+     */
+    BulkOperationResponse deleteMachines(List<String> ids);
+
+    /**
+     * Creates a new machine with the provided fields, and its first revision in the same transaction.
      *
      * @param createMachineRequest provides information about the machine which will be created
      *                             eg.: name (required), description (optional), yearOfProduction (optional)
@@ -46,6 +190,16 @@ public interface MachineService {
      */
     MachineTO createMachine(CreateMachineRequest createMachineRequest);
 
+    /**
+     * Creates a new machine for each of the provided requests in a single transaction,
+     * the rows are inserted in JDBC batches.
+     *
+     * @param createMachineRequests provides information about the machines which will be created,
+     *                              every request must be valid already.
+     * @return DTOs of the machines which were created, in the order of the requests.
+     */
+    List<MachineTO> createMachines(List<CreateMachineRequest> createMachineRequests);
+
     /**
      * Updates a machine in the database with the provided fields.
      *
@@ -54,4 +208,13 @@ public interface MachineService {
      * @throws MachineDoesNotExistException if cannot find any machines in the database with the provided id.
      */
     void updateMachine(MachineTO machineTO) throws MachineDoesNotExistException;
+
+    /**
+     * Updates every machine with the provided ids in the database with a single statement.
+     *
+     * @param bulkUpdateMachineRequest the ids of the machines and the fields which will be set on all of them,
+     *                                 fields which are not provided are left unchanged.
+     * @return the ids of the machines which were updated and the ids which did not match any stored machines.
+     */
+    BulkOperationResponse updateMachines(BulkUpdateMachineRequest bulkUpdateMachineRequest);
 }
@@ -1,71 +1,495 @@
 package com.github.boardyb.machinist.machine;
 
+import com.github.boardyb.machinist.machine.event.MachineChangeType;
+import com.github.boardyb.machinist.machine.event.MachineChangedEvent;
+import com.github.boardyb.machinist.machine.exception.ExpiredWatermarkException;
+import com.github.boardyb.machinist.machine.exception.InvalidPageLimitException;
+import com.github.boardyb.machinist.machine.exception.InvalidSearchQueryException;
 import com.github.boardyb.machinist.machine.exception.MachineDoesNotExistException;
+import com.github.boardyb.restmodel.BulkOperationResponse;
+import com.github.boardyb.restmodel.BulkUpdateMachineRequest;
 import com.github.boardyb.restmodel.CreateMachineRequest;
+import com.github.boardyb.restmodel.MachineChanges;
+import com.github.boardyb.restmodel.MachinePage;
+import com.github.boardyb.restmodel.MachineRevisionTO;
+import com.github.boardyb.restmodel.MachineSearchPage;
+import com.github.boardyb.restmodel.MachineStats;
 import com.github.boardyb.restmodel.MachineTO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Slf4j
 @Service
 public class MachineServiceImpl implements MachineService {
 
+    static final int MAX_PAGE_LIMIT = 500;
+    static final int MAX_SEARCH_PAGE_SIZE = 100;
+
     private MachineRepository machineRepository;
+    private EntityManager entityManager;
+    private MachineCache machineCache;
+    private MachineSearch machineSearch;
+    private ApplicationEventPublisher eventPublisher;
+    private MachineRevisionRepository machineRevisionRepository;
+    private MachineStatistics machineStatistics;
+    private MachineWriteHorizon machineWriteHorizon;
+    private Duration changesSettleTime;
 
     @Autowired
-    public MachineServiceImpl(MachineRepository machineRepository) {
+    public MachineServiceImpl(MachineRepository machineRepository,
+                              EntityManager entityManager,
+                              MachineCache machineCache,
+                              MachineSearch machineSearch,
+                              ApplicationEventPublisher eventPublisher,
+                              MachineRevisionRepository machineRevisionRepository,
+                              MachineStatistics machineStatistics,
+                              MachineWriteHorizon machineWriteHorizon,
+                              @Value("${machinist.changes.settle-time:PT5S}") Duration changesSettleTime) {
         this.machineRepository = machineRepository;
+        this.entityManager = entityManager;
+        this.machineCache = machineCache;
+        this.machineSearch = machineSearch;
+        this.eventPublisher = eventPublisher;
+        this.machineRevisionRepository = machineRevisionRepository;
+        this.machineStatistics = machineStatistics;
+        this.machineWriteHorizon = machineWriteHorizon;
+        this.changesSettleTime = changesSettleTime;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<MachineTO> getAllMachines() {
-        List<Machine> machines = this.machineRepository.findAllByDeletedFalseOrderByUpdatedAtDesc();
-        log.debug("Fetched machines to return: [{}]", machines);
-        return machines.stream().map((Machine::toDTO)).collect(Collectors.toList());
+        List<MachineTO> machines = this.machineRepository.findAllProjectedByDeletedFalse();
+        log.debug("Fetched machines to return: [{}]", MachineLogSummary.ofMachines(machines));
+        return machines;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<MachineTO> getAllMachines(Set<MachineField> fields) {
+        if (fields == null) {
+            return getAllMachines();
+        }
+        List<MachineTO> machines = this.machineRepository.findAllWithFields(fields);
+        log.debug("Fetched [{}] with fields [{}]", MachineLogSummary.ofMachines(machines), fields);
+        return machines;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public MachinePage getMachinePage(String cursor, int limit) {
+        return getMachinePage(cursor, limit, null);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public MachinePage getMachinePage(String cursor, int limit, Set<MachineField> fields) {
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            throw new InvalidPageLimitException(limit, MAX_PAGE_LIMIT);
+        }
+        MachineCursor after = cursor == null ? null : MachineCursor.decode(cursor);
+        List<MachineTO> machines;
+        if (fields != null) {
+            machines = this.machineRepository.findPageWithFields(fields,
+                    after == null ? null : after.getUpdatedAt(),
+                    after == null ? null : after.getId(),
+                    limit + 1);
+        } else {
+            machines = after == null
+                    ? this.machineRepository.findFirstPage(PageRequest.of(0, limit + 1))
+                    : fetchPageAfter(after, limit + 1);
+        }
+        MachinePage page = new MachinePage();
+        if (machines.size() > limit) {
+            machines = machines.subList(0, limit);
+            page.setNextCursor(MachineCursor.of(machines.get(limit - 1)).encode());
+        }
+        page.setItems(machines);
+        log.debug("Fetched page of [{}] after cursor [{}]", MachineLogSummary.ofMachines(machines), cursor);
+        return page;
+    }
+
+    private List<MachineTO> fetchPageAfter(MachineCursor cursor, int limit) {
+        return this.machineRepository.findPageAfter(cursor.getUpdatedAt(), cursor.getId(), PageRequest.of(0, limit));
     }
 
+    /**
+     * Reads from the primary database, since changes which a replica did not replay yet would also fall behind the
+     * returned watermark.
+     */
     @Override
+    @Transactional
+    public MachineChanges getMachineChanges(String since, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            throw new InvalidPageLimitException(limit, MAX_PAGE_LIMIT);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime until = this.machineWriteHorizon.findOldestRunningWriteStart()
+                .filter(oldestWriteStart -> oldestWriteStart.isBefore(now))
+                .orElse(now)
+                .minus(this.changesSettleTime);
+        List<MachineDelta> deltas = since == null
+                ? this.machineRepository.findFirstChanges(until, PageRequest.of(0, limit + 1))
+                : fetchChangesAfter(MachineCursor.decode(since), until, limit + 1);
+        MachineChanges changes = new MachineChanges();
+        changes.setHasMore(deltas.size() > limit);
+        if (deltas.size() > limit) {
+            deltas = deltas.subList(0, limit);
+        }
+        changes.setItems(new ArrayList<>());
+        changes.setDeletedIds(new ArrayList<>());
+        deltas.forEach(delta -> {
+            if (delta.isDeleted()) {
+                changes.addDeletedIdsItem(delta.getId());
+            } else {
+                changes.addItemsItem(delta.getMachine());
+            }
+        });
+        changes.setWatermark(deltas.isEmpty() ? since : MachineCursor.of(deltas.get(deltas.size() - 1)).encode());
+        log.debug("Fetched [{}] changed and [{}] deleted machines since watermark [{}]",
+                changes.getItems().size(), changes.getDeletedIds().size(), since);
+        return changes;
+    }
+
+    private List<MachineDelta> fetchChangesAfter(MachineCursor watermark, LocalDateTime until, int limit) {
+        LocalDateTime lastArchivedUpdatedAt = this.machineRepository.findLastArchivedUpdatedAt();
+        if (lastArchivedUpdatedAt != null && !lastArchivedUpdatedAt.isBefore(watermark.getUpdatedAt())) {
+            throw new ExpiredWatermarkException(watermark.encode());
+        }
+        return this.machineRepository.findChangesAfter(watermark.getUpdatedAt(), watermark.getId(), until,
+                PageRequest.of(0, limit));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public MachineSearchPage searchMachines(String query, int page, int size) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new InvalidSearchQueryException(query);
+        }
+        if (page < 0) {
+            throw new InvalidPageLimitException(page);
+        }
+        if (size < 1 || size > MAX_SEARCH_PAGE_SIZE) {
+            throw new InvalidPageLimitException(size, MAX_SEARCH_PAGE_SIZE);
+        }
+        List<MachineTO> machines = this.machineSearch.search(query, page * size, size + 1);
+        MachineSearchPage searchPage = new MachineSearchPage();
+        if (machines.size() > size) {
+            machines = machines.subList(0, size);
+            searchPage.setNextPage(page + 1);
+        }
+        searchPage.setItems(machines);
+        log.debug("Found [{}] on page [{}] of search [{}]", MachineLogSummary.ofMachines(machines), page, query);
+        return searchPage;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportMachines(Consumer<MachineTO> consumer) {
+        try (Stream<Machine> machines = this.machineRepository.streamAllByDeletedFalse()) {
+            machines.forEach(machine -> {
+                consumer.accept(machine.toDTO());
+                this.entityManager.detach(machine);
+            });
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public MachineTO getMachineById(String id) {
-        Machine machine = this.machineRepository
-                .findByIdAndDeletedFalse(id)
+        if (!Machine.isWellFormedId(id)) {
+            throw new MachineDoesNotExistException(id);
+        }
+        return this.machineCache
+                .get(id, this.machineRepository::findProjectedById)
                 .orElseThrow(() -> new MachineDoesNotExistException(id));
-        return machine.toDTO();
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public MachineTO getMachineById(String id, Set<MachineField> fields) {
+        MachineTO machine = getMachineById(id);
+        return fields == null ? machine : SparseMachineTO.copyOf(machine, fields);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<MachineRevisionTO> getMachineHistory(String id) {
+        if (!Machine.isWellFormedId(id)) {
+            throw new MachineDoesNotExistException(id);
+        }
+        List<MachineRevision> revisions = this.machineRevisionRepository.findAllByMachineId(id);
+        if (revisions.isEmpty()) {
+            throw new MachineDoesNotExistException(id);
+        }
+        return revisions.stream().map(MachineRevision::toDTO).collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public MachinePage getMachinesAsOf(LocalDateTime asOf, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            throw new InvalidPageLimitException(limit, MAX_PAGE_LIMIT);
+        }
+        MachineCursor after = cursor == null ? null : MachineCursor.decode(cursor);
+        List<MachineRevision> lastRevisions = after == null
+                ? this.machineRevisionRepository.findFirstLastRevisionsUntil(asOf, PageRequest.of(0, limit + 1))
+                : this.machineRevisionRepository.findLastRevisionsUntilAfter(asOf, after.getUpdatedAt(),
+                after.getId(), PageRequest.of(0, limit + 1));
+        List<String> ids = lastRevisions.stream().map(MachineRevision::getMachineId).collect(Collectors.toList());
+        if (ids.size() > limit) {
+            ids = ids.subList(0, limit);
+        }
+        Map<String, MachineTO> machinesById = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (MachineRevision revision : this.machineRevisionRepository.findAllByMachineIdsUntil(ids, asOf)) {
+                machinesById.put(revision.getMachineId(), revision.applyTo(machinesById.get(revision.getMachineId())));
+            }
+        }
+        List<MachineTO> machines = ids.stream().map(machinesById::get).collect(Collectors.toList());
+        MachinePage page = new MachinePage();
+        if (lastRevisions.size() > limit) {
+            page.setNextCursor(MachineCursor.of(machines.get(limit - 1)).encode());
+        }
+        page.setItems(machines);
+        log.debug("Rebuilt page of [{}] as of [{}] after cursor [{}]", MachineLogSummary.ofMachines(machines), asOf,
+                cursor);
+        return page;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Long> getMachineVersion(String id) {
+        if (!Machine.isWellFormedId(id)) {
+            return Optional.empty();
+        }
+        Optional<MachineTO> cachedMachine = this.machineCache.getIfPresent(id);
+        if (cachedMachine.isPresent()) {
+            return Optional.of(cachedMachine.get().getVersion());
+        }
+        return this.machineRepository.findVersionById(id);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public MachineCatalogueVersion getCatalogueVersion() {
+        return this.machineRepository.findCatalogueVersion();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public MachineStats getMachineStats() {
+        return this.machineStatistics.getStats();
+    }
+
+    @Override
+    @Transactional
     public void deleteMachineById(String id) {
-        Machine machine = this.machineRepository
-                .findByIdAndDeletedFalse(id)
-                .orElseThrow(() -> new MachineDoesNotExistException(id));
-        machine.setDeleted(true);
         log.debug("Deleting machine with id [{}]", id);
-        this.machineRepository.save(machine);
+        if (!Machine.isWellFormedId(id) || this.machineRepository.softDeleteById(id, LocalDateTime.now()) == 0) {
+            throw new MachineDoesNotExistException(id);
+        }
+        recordDeletions(Collections.singleton(id));
+        this.machineStatistics.countDeleted(this.machineRepository.countByYearOfProduction(Collections.singleton(id)));
+        this.machineCache.invalidate(Collections.singleton(id));
+        this.eventPublisher.publishEvent(new MachineChangedEvent(MachineChangeType.DELETED, Collections.singleton(id)));
     }
 
     @Override
+    @Transactional
+    public BulkOperationResponse deleteMachines(List<String> ids) {
+        Set<String> requestedIds = new LinkedHashSet<>(ids);
+        List<String> matchedIds = lockLiveIds(requestedIds);
+        if (!matchedIds.isEmpty()) {
+            this.machineRepository.softDeleteByIds(matchedIds, LocalDateTime.now());
+            recordDeletions(matchedIds);
+            this.machineStatistics.countDeleted(this.machineRepository.countByYearOfProduction(matchedIds));
+            this.machineCache.invalidate(matchedIds);
+            this.eventPublisher.publishEvent(new MachineChangedEvent(MachineChangeType.DELETED, matchedIds));
+        }
+        log.debug("Deleted [{}] of [{}] requested machines",
+                MachineLogSummary.ofIds(matchedIds), requestedIds.size());
+        return toBulkOperationResponse(requestedIds, matchedIds);
+    }
+
+    @Override
+    @Transactional
     public MachineTO createMachine(CreateMachineRequest createMachineRequest) {
         Machine machine = new Machine(createMachineRequest.getName(),
                 createMachineRequest.getDescription(),
                 createMachineRequest.getYearOfProduction()
         );
         Machine savedMachine = this.machineRepository.save(machine);
+        recordCreation(savedMachine);
+        this.machineStatistics.countCreated(Collections.singleton(savedMachine));
         log.debug("Machine saved with the following fields: [{}]", savedMachine);
+        this.eventPublisher.publishEvent(new MachineChangedEvent(MachineChangeType.CREATED,
+                Collections.singleton(savedMachine.getId())));
         return savedMachine.toDTO();
     }
 
     @Override
+    @Transactional
+    public List<MachineTO> createMachines(List<CreateMachineRequest> createMachineRequests) {
+        List<Machine> machines = createMachineRequests.stream()
+                .map(request -> new Machine(request.getName(), request.getDescription(), request.getYearOfProduction()))
+                .collect(Collectors.toList());
+        Iterable<Machine> savedMachines = this.machineRepository.saveAll(machines);
+        log.debug("Saved [{}] machines in batch", machines.size());
+        savedMachines.forEach(this::recordCreation);
+        this.machineStatistics.countCreated(machines);
+        List<MachineTO> savedMachineTOs = StreamSupport.stream(savedMachines.spliterator(), false)
+                .map(Machine::toDTO)
+                .collect(Collectors.toList());
+        this.eventPublisher.publishEvent(new MachineChangedEvent(MachineChangeType.CREATED,
+                savedMachineTOs.stream().map(MachineTO::getId).collect(Collectors.toList())));
+        return savedMachineTOs;
+    }
+
+    @Override
+    @Transactional
     public void updateMachine(MachineTO machineTO) {
+        if (!Machine.isWellFormedId(machineTO.getId())) {
+            throw new MachineDoesNotExistException(machineTO.getId());
+        }
         Machine machine = this.machineRepository.findByIdAndDeletedFalse(machineTO.getId())
                 .orElseThrow(() -> new MachineDoesNotExistException(machineTO.getId()));
+        Set<MachineField> changedFields = EnumSet.noneOf(MachineField.class);
+        if (!Objects.equals(machine.getName(), machineTO.getName())) {
+            changedFields.add(MachineField.NAME);
+        }
+        if (!Objects.equals(machine.getDescription(), machineTO.getDescription())) {
+            changedFields.add(MachineField.DESCRIPTION);
+        }
+        if (!Objects.equals(machine.getYearOfProduction(), machineTO.getYearOfProduction())) {
+            changedFields.add(MachineField.YEAR_OF_PRODUCTION);
+            this.machineStatistics.countUpdated(machine.getYearOfProduction(), machineTO.getYearOfProduction());
+        }
         machine.setName(machineTO.getName());
         machine.setDescription(machineTO.getDescription());
         machine.setYearOfProduction(machineTO.getYearOfProduction());
         this.machineRepository.save(machine);
+        if (!changedFields.isEmpty()) {
+            this.entityManager.persist(MachineRevision.of(machine, machine.getVersion() + 1, MachineChangeType.UPDATED,
+                    LocalDateTime.now(), changedFields));
+        }
+        this.machineCache.invalidate(Collections.singleton(machine.getId()));
+        this.eventPublisher.publishEvent(new MachineChangedEvent(MachineChangeType.UPDATED,
+                Collections.singleton(machine.getId())));
         log.debug("Machine updated with the following fields: [{}]", machine);
     }
 
+    @Override
+    @Transactional
+    public BulkOperationResponse updateMachines(BulkUpdateMachineRequest bulkUpdateMachineRequest) {
+        Set<String> requestedIds = new LinkedHashSet<>(bulkUpdateMachineRequest.getIds());
+        List<String> matchedIds = lockLiveIds(requestedIds);
+        if (!matchedIds.isEmpty()) {
+            if (bulkUpdateMachineRequest.getYearOfProduction() != null) {
+                this.machineStatistics.countUpdated(this.machineRepository.countByYearOfProduction(matchedIds),
+                        bulkUpdateMachineRequest.getYearOfProduction());
+            }
+            this.machineRepository.updateByIds(matchedIds,
+                    bulkUpdateMachineRequest.getName(),
+                    bulkUpdateMachineRequest.getDescription(),
+                    bulkUpdateMachineRequest.getYearOfProduction(),
+                    LocalDateTime.now());
+            Set<MachineField> changedFields = EnumSet.noneOf(MachineField.class);
+            if (bulkUpdateMachineRequest.getName() != null) {
+                changedFields.add(MachineField.NAME);
+            }
+            if (bulkUpdateMachineRequest.getDescription() != null) {
+                changedFields.add(MachineField.DESCRIPTION);
+            }
+            if (bulkUpdateMachineRequest.getYearOfProduction() != null) {
+                changedFields.add(MachineField.YEAR_OF_PRODUCTION);
+            }
+            recordBulkRevisions(matchedIds, MachineChangeType.UPDATED, revision -> revision.setChanges(changedFields,
+                    bulkUpdateMachineRequest.getName(),
+                    bulkUpdateMachineRequest.getDescription(),
+                    bulkUpdateMachineRequest.getYearOfProduction()));
+            this.machineCache.invalidate(matchedIds);
+            this.eventPublisher.publishEvent(new MachineChangedEvent(MachineChangeType.UPDATED, matchedIds));
+        }
+        log.debug("Updated [{}] of [{}] requested machines",
+                MachineLogSummary.ofIds(matchedIds), requestedIds.size());
+        return toBulkOperationResponse(requestedIds, matchedIds);
+    }
+
+    /**
+     * Locks the machines with the requested ids which are not deleted, and returns their ids. Ids which are not
+     * well-formed are not looked up, they are reported as not found.
+     */
+    private List<String> lockLiveIds(Set<String> requestedIds) {
+        List<String> ids = requestedIds.stream().filter(Machine::isWellFormedId).collect(Collectors.toList());
+        return ids.isEmpty() ? Collections.emptyList() : this.machineRepository.lockLiveIds(ids);
+    }
+
+    /**
+     * Appends the first revision of a machine, which contains every changeable field. The revisions are inserted
+     * in JDBC batches when the transaction is flushed.
+     */
+    private void recordCreation(Machine machine) {
+        this.entityManager.persist(MachineRevision.of(machine, machine.getVersion(), MachineChangeType.CREATED,
+                machine.getCreatedAt(), MachineRevision.CHANGEABLE_FIELDS));
+    }
+
+    private void recordDeletions(Collection<String> ids) {
+        recordBulkRevisions(ids, MachineChangeType.DELETED, revision -> {
+        });
+    }
+
+    /**
+     * Appends a revision for each of the provided machines which were changed by a bulk statement, with the
+     * version and modification time set by the statement.
+     */
+    private void recordBulkRevisions(Collection<String> ids, MachineChangeType changeType,
+                                     Consumer<MachineRevision> changes) {
+        this.machineRevisionRepository.findCurrentRevisions(ids).forEach(revision -> {
+            revision.setChangeType(changeType);
+            changes.accept(revision);
+            this.entityManager.persist(revision);
+        });
+    }
+
+    private BulkOperationResponse toBulkOperationResponse(Set<String> requestedIds, List<String> matchedIds) {
+        Set<String> matchedIdSet = new HashSet<>(matchedIds);
+        BulkOperationResponse response = new BulkOperationResponse();
+        response.setMatchedIds(new ArrayList<>());
+        response.setNotFoundIds(new ArrayList<>());
+        requestedIds.forEach(id -> {
+            if (matchedIdSet.contains(id)) {
+                response.addMatchedIdsItem(id);
+            } else {
+                response.addNotFoundIdsItem(id);
+            }
+        });
+        return response;
+    }
+
 }
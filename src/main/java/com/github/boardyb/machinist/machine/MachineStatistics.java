@@ -0,0 +1,227 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.restmodel.AgeBucketCount;
+import com.github.boardyb.restmodel.MachineStats;
+import com.github.boardyb.restmodel.YearOfProductionCount;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.boardyb.machinist.machine.MachineYearCount.UNKNOWN_YEAR;
+import static com.github.boardyb.machinist.machine.MachineYearCount.yearOfOrUnknown;
+
+/**
+ * Counts the machines which are not deleted by year of production, so their statistics are served in constant time
+ * instead of by reading every machine. The counters are stored in a table and changed in the transactions which
+ * create, update and delete the machines, so every instance serves the same statistics. The transactions lock the
+ * machines first and then their counters in the order of their years, so they do not deadlock on each other.
+ * Every valid year has a counter from the start, so the transactions only ever update counters.
+ * <p>
+ * A reconciliation job compares the counters to a count of the machines with a {@code GROUP BY} without locking
+ * anything. Every counter which seems to have drifted is then locked on its own, its year is counted again and the
+ * difference is added to it, so the writes only wait for the count of a single year.
+ */
+@Slf4j
+@Component
+public class MachineStatistics implements MeterBinder {
+
+    private final MachineYearCountRepository machineYearCountRepository;
+    private final MachineRepository machineRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int[] ageBuckets;
+    private final AtomicLong lastDrift = new AtomicLong();
+
+    /**
+     * @param ageBuckets the ascending ages in years at which the age buckets of the statistics start, besides 0.
+     */
+    @Autowired
+    public MachineStatistics(MachineYearCountRepository machineYearCountRepository,
+                             MachineRepository machineRepository,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${machinist.stats.age-buckets:5,10,20,30}") int[] ageBuckets) {
+        this.machineYearCountRepository = machineYearCountRepository;
+        this.machineRepository = machineRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ageBuckets = ageBuckets;
+    }
+
+    /**
+     * Counts the created machines, must be called in the transaction which creates them.
+     */
+    public void countCreated(Collection<Machine> machines) {
+        Map<Integer, Long> deltas = new TreeMap<>();
+        machines.forEach(machine -> deltas.merge(yearOfOrUnknown(machine.getYearOfProduction()), 1L, Long::sum));
+        addToCounts(deltas);
+    }
+
+    /**
+     * Moves a machine to the counter of its new year of production, must be called in the transaction which
+     * updates it.
+     */
+    public void countUpdated(Integer previousYearOfProduction, Integer yearOfProduction) {
+        countUpdated(Collections.singletonList(new MachineYearCount(previousYearOfProduction, 1L)), yearOfProduction);
+    }
+
+    /**
+     * Moves machines from the counters of their previous years of production to the counter of their new year,
+     * must be called in the transaction which updates them.
+     */
+    public void countUpdated(List<MachineYearCount> previousCounts, Integer yearOfProduction) {
+        Map<Integer, Long> deltas = new TreeMap<>();
+        previousCounts.forEach(count -> {
+            deltas.merge(count.getYearOfProduction(), -count.getMachineCount(), Long::sum);
+            deltas.merge(yearOfOrUnknown(yearOfProduction), count.getMachineCount(), Long::sum);
+        });
+        addToCounts(deltas);
+    }
+
+    /**
+     * Removes the deleted machines from the counters of their years of production, must be called in the
+     * transaction which deletes them.
+     */
+    public void countDeleted(List<MachineYearCount> counts) {
+        Map<Integer, Long> deltas = new TreeMap<>();
+        counts.forEach(count -> deltas.merge(count.getYearOfProduction(), -count.getMachineCount(), Long::sum));
+        addToCounts(deltas);
+    }
+
+    private void addToCounts(Map<Integer, Long> deltas) {
+        deltas.forEach((yearOfProduction, delta) -> {
+            if (delta != 0 && this.machineYearCountRepository.addToCount(yearOfProduction, delta) == 0) {
+                log.warn("Machines of year [{}] have no counter, it is created by the next reconciliation",
+                        yearOfProduction);
+            }
+        });
+    }
+
+    /**
+     * Returns the statistics of the machines from the counters, the age of the machines is the difference of the
+     * current year and their year of production.
+     */
+    public MachineStats getStats() {
+        int currentYear = Year.now().getValue();
+        long[] ageCounts = new long[this.ageBuckets.length + 1];
+        MachineStats stats = new MachineStats();
+        stats.setTotal(0L);
+        stats.setUnknownYearOfProduction(0L);
+        stats.setByYearOfProduction(new ArrayList<>());
+        stats.setByAge(new ArrayList<>());
+        for (MachineYearCount count : this.machineYearCountRepository.findAllOrdered()) {
+            if (count.getMachineCount() == 0) {
+                continue;
+            }
+            stats.setTotal(stats.getTotal() + count.getMachineCount());
+            if (count.getYearOfProduction() == UNKNOWN_YEAR) {
+                stats.setUnknownYearOfProduction(count.getMachineCount());
+                continue;
+            }
+            stats.addByYearOfProductionItem(new YearOfProductionCount()
+                    .yearOfProduction(count.getYearOfProduction())
+                    .count(count.getMachineCount()));
+            ageCounts[ageBucketOf(currentYear - count.getYearOfProduction())] += count.getMachineCount();
+        }
+        for (int i = 0; i < ageCounts.length; i++) {
+            stats.addByAgeItem(new AgeBucketCount()
+                    .minAge(i == 0 ? 0 : this.ageBuckets[i - 1])
+                    .maxAge(i < this.ageBuckets.length ? this.ageBuckets[i] : null)
+                    .count(ageCounts[i]));
+        }
+        return stats;
+    }
+
+    private int ageBucketOf(int age) {
+        int bucket = 0;
+        while (bucket < this.ageBuckets.length && age >= this.ageBuckets[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /**
+     * Compares the counters to a count of the machines, creates the missing counters and corrects the counters which
+     * drifted. Returns the drift, the sum of the differences of the counters and the count of the machines.
+     */
+    @Scheduled(fixedDelayString = "${machinist.stats.reconcile-interval:PT1H}")
+    public long reconcile() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        Map<Integer, Long> counters = new TreeMap<>();
+        counts.put(UNKNOWN_YEAR, 0L);
+        for (int year = Machine.MIN_YEAR_OF_PRODUCTION; year <= Machine.MAX_YEAR_OF_PRODUCTION; year++) {
+            counts.put(year, 0L);
+        }
+        this.transactionTemplate.executeWithoutResult(status -> {
+            this.machineYearCountRepository.findAllOrdered().forEach(counter -> {
+                counters.put(counter.getYearOfProduction(), counter.getMachineCount());
+                counts.putIfAbsent(counter.getYearOfProduction(), 0L);
+            });
+            this.machineRepository.countLiveByYearOfProduction()
+                    .forEach(count -> counts.put(count.getYearOfProduction(), count.getMachineCount()));
+        });
+        long drift = 0;
+        for (Map.Entry<Integer, Long> count : counts.entrySet()) {
+            Long counted = counters.get(count.getKey());
+            if (counted == null) {
+                createCounter(count.getKey());
+            }
+            if (!count.getValue().equals(counted)) {
+                drift += correctCounter(count.getKey());
+            }
+        }
+        this.lastDrift.set(drift);
+        log.info("Reconciled counters of machines with a drift of [{}] machines", drift);
+        return drift;
+    }
+
+    private void createCounter(int yearOfProduction) {
+        try {
+            this.transactionTemplate.executeWithoutResult(status -> this.machineYearCountRepository
+                    .save(new MachineYearCount(yearOfProduction, 0L)));
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Counter of machines of year [{}] was created concurrently", yearOfProduction);
+        }
+    }
+
+    /**
+     * Counts the machines of the year while their counter is locked, so the count and the counter include the same
+     * transactions, and adds the difference to the counter. Returns the absolute difference.
+     */
+    private long correctCounter(int yearOfProduction) {
+        return this.transactionTemplate.execute(status -> {
+            long counted = this.machineYearCountRepository.lockByYearOfProduction(yearOfProduction)
+                    .map(MachineYearCount::getMachineCount)
+                    .orElse(0L);
+            long count = this.machineRepository.countLiveByYearOfProduction(yearOfProduction);
+            if (count == counted) {
+                return 0L;
+            }
+            log.warn("Machines of year [{}] were counted as [{}] instead of [{}], correcting the counter",
+                    yearOfProduction, counted, count);
+            this.machineYearCountRepository.addToCount(yearOfProduction, count - counted);
+            return Math.abs(count - counted);
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("machinist.stats.drift", this.lastDrift, AtomicLong::get)
+                .description("Machines by which the counters differed from the machines at the last reconciliation")
+                .register(registry);
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.boardyb.machinist.machine;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Finds the writes of machines which are still running in the database, so the changes of machines are only served
+ * up to the time before which every modification time is committed.
+ */
+public interface MachineWriteHorizon {
+
+    /**
+     * Returns the start of the oldest transaction which wrote to the database and has not committed yet, in the time
+     * zone of the modification times of the machines. Must be called on the primary database.
+     *
+     * @return the start of the oldest running write or empty if there is none or it cannot be found.
+     */
+    Optional<LocalDateTime> findOldestRunningWriteStart();
+}
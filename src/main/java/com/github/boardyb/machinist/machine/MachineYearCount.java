@@ -0,0 +1,41 @@
+package com.github.boardyb.machinist.machine;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * The number of machines which are not deleted with a year of production, the machines without one are counted
+ * with the year {@value #UNKNOWN_YEAR}.
+ */
+@Data
+@Entity
+@Table(name = "machine_year_count", schema = "machinist")
+@NoArgsConstructor
+public class MachineYearCount {
+
+    static final int UNKNOWN_YEAR = 0;
+
+    @Id
+    @Column(name = "year_of_production")
+    private int yearOfProduction;
+
+    @Column(name = "machine_count", nullable = false)
+    private long machineCount;
+
+    /**
+     * Also used by the queries which count the machines of every year of production.
+     */
+    public MachineYearCount(Integer yearOfProduction, Long machineCount) {
+        this.yearOfProduction = yearOfOrUnknown(yearOfProduction);
+        this.machineCount = machineCount;
+    }
+
+    static int yearOfOrUnknown(Integer yearOfProduction) {
+        return yearOfProduction == null ? UNKNOWN_YEAR : yearOfProduction;
+    }
+}
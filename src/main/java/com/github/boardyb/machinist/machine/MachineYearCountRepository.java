@@ -0,0 +1,33 @@
+package com.github.boardyb.machinist.machine;
+
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.Optional;
+
+public interface MachineYearCountRepository extends CrudRepository<MachineYearCount, Integer> {
+
+    @Query("SELECT c FROM MachineYearCount c ORDER BY c.yearOfProduction ASC")
+    List<MachineYearCount> findAllOrdered();
+
+    /**
+     * Locks the counter of the year until the end of the transaction, the machines changed meanwhile are counted
+     * after it is released.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM MachineYearCount c WHERE c.yearOfProduction = :yearOfProduction")
+    Optional<MachineYearCount> lockByYearOfProduction(@Param("yearOfProduction") int yearOfProduction);
+
+    /**
+     * Adds the delta to the counter of the year, returns 0 if the year has no counter.
+     */
+    @Modifying
+    @Query("UPDATE MachineYearCount c SET c.machineCount = c.machineCount + :delta " +
+            "WHERE c.yearOfProduction = :yearOfProduction")
+    int addToCount(@Param("yearOfProduction") int yearOfProduction, @Param("delta") long delta);
+}
@@ -0,0 +1,17 @@
+package com.github.boardyb.machinist.machine;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Portable fallback of {@link PostgresMachineWriteHorizon} for databases which do not expose their running
+ * transactions, eg. H2. It never finds a running write, so the changes of machines are only held back by the
+ * settle time, which must then be longer than any write transaction.
+ */
+public class PortableMachineWriteHorizon implements MachineWriteHorizon {
+
+    @Override
+    public Optional<LocalDateTime> findOldestRunningWriteStart() {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.restmodel.MachineTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Searches the GIN indexed search_vector column of machines, ranking the matches with ts_rank.
+ */
+@Component
+public class PostgresMachineSearch implements MachineSearch {
+
+    private static final String SEARCH_QUERY = "SELECT CAST(m.id AS VARCHAR), m.created_at, m.updated_at, m.name, m.description, " +
+            "m.year_of_production, m.version " +
+            "FROM machinist.machine m, websearch_to_tsquery('english', :query) q " +
+            "WHERE m.deleted = false AND m.search_vector @@ q " +
+            "ORDER BY ts_rank(m.search_vector, q) DESC, m.id " +
+            "LIMIT :limit OFFSET :offset";
+
+    private EntityManager entityManager;
+
+    @Autowired
+    public PostgresMachineSearch(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<MachineTO> search(String query, int offset, int limit) {
+        List<Object[]> rows = this.entityManager.createNativeQuery(SEARCH_QUERY)
+                .setParameter("query", query)
+                .setParameter("limit", limit)
+                .setParameter("offset", offset)
+                .getResultList();
+        return rows.stream().map(PostgresMachineSearch::toDTO).collect(Collectors.toList());
+    }
+
+    private static MachineTO toDTO(Object[] row) {
+        return new ProjectedMachineTO((String) row[0],
+                ((Timestamp) row[1]).toLocalDateTime(),
+                ((Timestamp) row[2]).toLocalDateTime(),
+                (String) row[3],
+                (String) row[4],
+                row[5] == null ? null : ((Number) row[5]).intValue(),
+                ((Number) row[6]).longValue());
+    }
+}
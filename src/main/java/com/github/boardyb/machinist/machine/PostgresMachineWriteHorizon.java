@@ -0,0 +1,38 @@
+package com.github.boardyb.machinist.machine;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Optional;
+
+/**
+ * Reads the start of the oldest transaction of the database which holds a transaction id, which it gets with its
+ * first write or row lock, from pg_stat_activity. Only the transactions of the same role, or of every role with
+ * pg_read_all_stats, are visible.
+ */
+@Component
+public class PostgresMachineWriteHorizon implements MachineWriteHorizon {
+
+    private static final String OLDEST_RUNNING_WRITE_QUERY = "SELECT MIN(a.xact_start) AT TIME ZONE :zone " +
+            "FROM pg_stat_activity a " +
+            "WHERE a.datname = current_database() AND a.backend_xid IS NOT NULL AND a.pid <> pg_backend_pid()";
+
+    private EntityManager entityManager;
+
+    @Autowired
+    public PostgresMachineWriteHorizon(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Optional<LocalDateTime> findOldestRunningWriteStart() {
+        Timestamp oldestStart = (Timestamp) this.entityManager.createNativeQuery(OLDEST_RUNNING_WRITE_QUERY)
+                .setParameter("zone", ZoneId.systemDefault().getId())
+                .getSingleResult();
+        return Optional.ofNullable(oldestStart).map(Timestamp::toLocalDateTime);
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.restmodel.MachineTO;
+
+import java.time.LocalDateTime;
+
+/**
+ * {@link MachineTO} which can be instantiated by a JPQL constructor expression,
+ * so read queries can return DTOs without loading {@link Machine} entities.
+ */
+public class ProjectedMachineTO extends MachineTO {
+
+    public ProjectedMachineTO(String id,
+                              LocalDateTime createdAt,
+                              LocalDateTime updatedAt,
+                              String name,
+                              String description,
+                              Integer yearOfProduction,
+                              long version) {
+        setId(id);
+        setCreatedAt(createdAt);
+        setUpdatedAt(updatedAt);
+        setName(name);
+        setDescription(description);
+        setYearOfProduction(yearOfProduction);
+        setVersion(version);
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.boardyb.machinist.machine;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.github.boardyb.restmodel.MachineTO;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link MachineTO} of which only the fields selected by the client are written to JSON. It may hold other
+ * fields as well, like the ones needed for the cursor of a page.
+ */
+@JsonSerialize(using = SparseMachineTO.Serializer.class)
+public class SparseMachineTO extends MachineTO {
+
+    private final Set<MachineField> fields;
+
+    private SparseMachineTO(Set<MachineField> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Creates the DTO from the columns of a row, which were selected in the order of the provided fields.
+     */
+    static SparseMachineTO fromRow(Object[] row, List<MachineField> selectedFields, Set<MachineField> fields) {
+        SparseMachineTO machine = new SparseMachineTO(fields);
+        for (int i = 0; i < selectedFields.size(); i++) {
+            selectedFields.get(i).set(machine, row[i]);
+        }
+        return machine;
+    }
+
+    static SparseMachineTO copyOf(MachineTO source, Set<MachineField> fields) {
+        SparseMachineTO machine = new SparseMachineTO(fields);
+        for (MachineField field : MachineField.values()) {
+            field.set(machine, field.get(source));
+        }
+        return machine;
+    }
+
+    public static class Serializer extends StdSerializer<SparseMachineTO> {
+
+        public Serializer() {
+            super(SparseMachineTO.class);
+        }
+
+        @Override
+        public void serialize(SparseMachineTO machine, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject(machine);
+            for (MachineField field : machine.fields) {
+                provider.defaultSerializeField(field.getFieldName(), field.get(machine), generator);
+            }
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.boardyb.machinist.machine;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+import java.io.Serializable;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Generates version 7 UUIDs, which start with the milliseconds since the epoch, followed by a 12 bit counter of
+ * the ids generated in the same millisecond and 62 random bits. New ids are greater than the ones generated before
+ * them, both as strings and as Postgres uuids, so new machines are appended to the right side of the primary key
+ * index instead of being inserted into random pages of it.
+ * <p>
+ * Ids generated by one generator never repeat and always increase, even when more than 4096 ids are generated in a
+ * millisecond or the clock goes back, in both cases the timestamp of the ids runs ahead of the clock until it
+ * catches up.
+ */
+public class TimeOrderedUuidGenerator implements IdentifierGenerator {
+
+    private static final int COUNTER_BITS = 12;
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000000000000000L;
+    private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+    private static final Random RANDOM = new SecureRandom();
+
+    private final LongSupplier clock;
+    private final Random random;
+    private final AtomicLong lastTimestampAndCounter = new AtomicLong();
+
+    public TimeOrderedUuidGenerator() {
+        this(System::currentTimeMillis, RANDOM);
+    }
+
+    TimeOrderedUuidGenerator(LongSupplier clock, Random random) {
+        this.clock = clock;
+        this.random = random;
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        return nextUuid().toString();
+    }
+
+    UUID nextUuid() {
+        long timestampAndCounter = this.lastTimestampAndCounter.updateAndGet(last -> {
+            long now = this.clock.getAsLong() << COUNTER_BITS;
+            return now > last ? now : last + 1;
+        });
+        long timestamp = timestampAndCounter >>> COUNTER_BITS;
+        long counter = timestampAndCounter & ((1L << COUNTER_BITS) - 1);
+        return new UUID(timestamp << 16 | VERSION | counter, VARIANT | (this.random.nextLong() & RANDOM_MASK));
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.boardyb.machinist.machine.event;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The change of the machines of a single operation as sent to the subscribers of the change feed.
+ */
+@Value
+public class MachineChange {
+
+    long sequence;
+    MachineChangeType type;
+    List<String> machineIds;
+    LocalDateTime occurredAt;
+}
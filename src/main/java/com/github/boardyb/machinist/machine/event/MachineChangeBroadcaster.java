@@ -0,0 +1,213 @@
+package com.github.boardyb.machinist.machine.event;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fans out committed machine changes to the subscribers of the change feed as server-sent events. The machines
+ * changed by one operation, like a batch creation, are sent as a single event.
+ * <p>
+ * Every change gets the next number of a sequence, and the latest changes are kept so a reconnecting subscriber
+ * can resume after the last event it received. The sequence only lives in this instance, so the id of an event is
+ * the sequence prefixed with the epoch of the instance, which is chosen randomly at startup. A subscriber who
+ * reconnects to another instance, or to a restarted one, is asked to resync. Changes made through other instances
+ * are not sent by this one. Publishing never blocks on
+ * subscribers: each of them has a bounded queue which is sent by a separate executor, and a subscriber whose queue
+ * is full, or who can not be resumed, receives a {@code resync} event and is disconnected. Such subscribers
+ * have to fetch the machines again before subscribing without the last event id.
+ */
+@Slf4j
+@Component
+public class MachineChangeBroadcaster {
+
+    static final String RESYNC_EVENT = "resync";
+
+    private final int subscriberBufferSize;
+    private final int replayBufferSize;
+    private final Executor executor;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Deque<MachineChange> replayBuffer = new ArrayDeque<>();
+    private final String epoch;
+    private long sequence;
+
+    @Autowired
+    public MachineChangeBroadcaster(@Value("${machinist.changes.subscriber-buffer-size:256}") int subscriberBufferSize,
+                                    @Value("${machinist.changes.replay-buffer-size:1024}") int replayBufferSize,
+                                    @Value("${machinist.changes.sender-threads:4}") int senderThreads) {
+        this(subscriberBufferSize, replayBufferSize,
+                Executors.newFixedThreadPool(senderThreads, new CustomizableThreadFactory("machine-changes-")),
+                Long.toHexString(new SecureRandom().nextLong()));
+    }
+
+    MachineChangeBroadcaster(int subscriberBufferSize, int replayBufferSize, Executor executor, String epoch) {
+        this.subscriberBufferSize = subscriberBufferSize;
+        this.replayBufferSize = replayBufferSize;
+        this.executor = executor;
+        this.epoch = epoch;
+    }
+
+    /**
+     * Registers the emitter of a new subscriber.
+     *
+     * @param emitter     the emitter which will send the changes to the subscriber.
+     * @param lastEventId the id of the last event the subscriber received before reconnecting or null if it is
+     *                    a new subscriber. The changes after it are sent first, or a {@code resync} event if they
+     *                    are not available anymore or it was not sent by this instance since it started.
+     */
+    public void subscribe(SseEmitter emitter, String lastEventId) {
+        Subscriber subscriber = new Subscriber(emitter, this.subscriberBufferSize);
+        emitter.onCompletion(() -> this.subscribers.remove(subscriber));
+        emitter.onTimeout(() -> this.subscribers.remove(subscriber));
+        synchronized (this) {
+            if (lastEventId != null) {
+                long lastSequence = sequenceOf(lastEventId);
+                long oldestAvailable = this.replayBuffer.isEmpty() ? this.sequence + 1 : this.replayBuffer.peekFirst().getSequence();
+                if (lastSequence < 0 || lastSequence + 1 < oldestAvailable || lastSequence > this.sequence) {
+                    subscriber.overflowed = true;
+                    scheduleSend(subscriber);
+                    return;
+                }
+                for (MachineChange change : this.replayBuffer) {
+                    if (change.getSequence() > lastSequence) {
+                        subscriber.enqueue(change);
+                    }
+                }
+            }
+            this.subscribers.add(subscriber);
+        }
+        scheduleSend(subscriber);
+    }
+
+    /**
+     * Returns the sequence of an event id sent by this instance, or -1 if the id was sent by another instance or
+     * before a restart.
+     */
+    private long sequenceOf(String eventId) {
+        int separatorIndex = eventId.lastIndexOf('-');
+        if (separatorIndex < 0 || !this.epoch.equals(eventId.substring(0, separatorIndex))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(separatorIndex + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onMachineChanged(MachineChangedEvent event) {
+        List<String> machineIds = Collections.unmodifiableList(new ArrayList<>(event.getMachineIds()));
+        List<Subscriber> notified = new ArrayList<>(this.subscribers.size());
+        synchronized (this) {
+            MachineChange change = new MachineChange(++this.sequence, event.getType(), machineIds, LocalDateTime.now());
+            this.replayBuffer.addLast(change);
+            if (this.replayBuffer.size() > this.replayBufferSize) {
+                this.replayBuffer.removeFirst();
+            }
+            for (Subscriber subscriber : this.subscribers) {
+                if (!subscriber.enqueue(change)) {
+                    this.subscribers.remove(subscriber);
+                    log.debug("Subscriber of machine changes can not keep up, requesting it to resync");
+                }
+            }
+            notified.addAll(this.subscribers);
+        }
+        notified.forEach(this::scheduleSend);
+    }
+
+    int getSubscriberCount() {
+        return this.subscribers.size();
+    }
+
+    private void scheduleSend(Subscriber subscriber) {
+        if (subscriber.sending.compareAndSet(false, true)) {
+            this.executor.execute(() -> send(subscriber));
+        }
+    }
+
+    private void send(Subscriber subscriber) {
+        try {
+            MachineChange change;
+            while ((change = subscriber.queue.poll()) != null) {
+                subscriber.emitter.send(SseEmitter.event()
+                        .id(this.epoch + '-' + change.getSequence())
+                        .name(change.getType().name().toLowerCase(Locale.ROOT))
+                        .data(change));
+            }
+            if (subscriber.overflowed) {
+                this.subscribers.remove(subscriber);
+                subscriber.emitter.send(SseEmitter.event().name(RESYNC_EVENT).data(RESYNC_EVENT));
+                subscriber.emitter.complete();
+                return;
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Failed to send machine changes to subscriber, removing it", e);
+            this.subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+            return;
+        } finally {
+            subscriber.sending.set(false);
+        }
+        if (!subscriber.queue.isEmpty() || subscriber.overflowed) {
+            scheduleSend(subscriber);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (this.executor instanceof ExecutorService) {
+            ((ExecutorService) this.executor).shutdownNow();
+        }
+    }
+
+    private static class Subscriber {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<MachineChange> queue;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean overflowed;
+
+        Subscriber(SseEmitter emitter, int bufferSize) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        boolean enqueue(MachineChange change) {
+            if (this.overflowed) {
+                return false;
+            }
+            if (!this.queue.offer(change)) {
+                this.queue.clear();
+                this.overflowed = true;
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.boardyb.machinist.machine.event;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+
+/**
+ * Streams the changes of machines as server-sent events. It is not part of the generated
+ * {@link com.github.boardyb.restapi.MachineApi} since the generated operations can not keep the response open.
+ */
+@RestController
+public class MachineChangeFeedController {
+
+    @Autowired
+    private MachineChangeBroadcaster machineChangeBroadcaster;
+
+    @Value("${machinist.changes.timeout:PT30M}")
+    private Duration timeout;
+
+    @GetMapping(value = "/api/machine/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        SseEmitter emitter = new SseEmitter(this.timeout.toMillis());
+        this.machineChangeBroadcaster.subscribe(emitter, lastEventId);
+        return emitter;
+    }
+}
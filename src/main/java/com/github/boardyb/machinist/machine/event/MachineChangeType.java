@@ -0,0 +1,7 @@
+package com.github.boardyb.machinist.machine.event;
+
+public enum MachineChangeType {
+    CREATED,
+    UPDATED,
+    DELETED
+}
@@ -0,0 +1,16 @@
+package com.github.boardyb.machinist.machine.event;
+
+import lombok.Value;
+
+import java.util.Collection;
+
+/**
+ * Published by the machine service whenever machines are created, updated or deleted.
+ * Listeners receive it once the transaction of the modification is committed.
+ */
+@Value
+public class MachineChangedEvent {
+
+    MachineChangeType type;
+    Collection<String> machineIds;
+}
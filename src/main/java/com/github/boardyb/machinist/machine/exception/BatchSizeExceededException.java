@@ -0,0 +1,8 @@
+package com.github.boardyb.machinist.machine.exception;
+
+public class BatchSizeExceededException extends MachineException {
+
+    public BatchSizeExceededException(int size, int maxSize) {
+        super("Batch of [" + size + "] items exceeds the maximum size of [" + maxSize + "]!");
+    }
+}
@@ -0,0 +1,8 @@
+package com.github.boardyb.machinist.machine.exception;
+
+public class ExpiredWatermarkException extends MachineException {
+
+    public ExpiredWatermarkException(String watermark) {
+        super("Deletions after watermark [" + watermark + "] were archived, fetch the changes without a watermark!");
+    }
+}
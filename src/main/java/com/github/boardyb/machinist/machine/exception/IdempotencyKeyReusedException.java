@@ -0,0 +1,8 @@
+package com.github.boardyb.machinist.machine.exception;
+
+public class IdempotencyKeyReusedException extends MachineException {
+
+    public IdempotencyKeyReusedException(String idempotencyKey) {
+        super("Idempotency key [" + idempotencyKey + "] was already used with a different request!");
+    }
+}
@@ -0,0 +1,8 @@
+package com.github.boardyb.machinist.machine.exception;
+
+public class InvalidCursorException extends MachineException {
+
+    public InvalidCursorException(String cursor) {
+        super("Cursor [" + cursor + "] is invalid!");
+    }
+}
@@ -0,0 +1,10 @@
+package com.github.boardyb.machinist.machine.exception;
+
+import java.util.Collection;
+
+public class InvalidFieldsException extends MachineException {
+
+    public InvalidFieldsException(Collection<String> unknownFields, Collection<String> validFields) {
+        super("Fields " + unknownFields + " are unknown, valid fields are " + validFields + "!");
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.boardyb.machinist.machine.exception;
+
+public class InvalidIdempotencyKeyException extends MachineException {
+
+    public InvalidIdempotencyKeyException(String idempotencyKey, int maxLength) {
+        super("Idempotency key [" + idempotencyKey + "] is invalid, it must not be blank or longer than "
+                + maxLength + " characters!");
+    }
+}
@@ -0,0 +1,12 @@
+package com.github.boardyb.machinist.machine.exception;
+
+public class InvalidPageLimitException extends MachineException {
+
+    public InvalidPageLimitException(int limit, int maxLimit) {
+        super("Page limit [" + limit + "] must be between 1 and " + maxLimit + "!");
+    }
+
+    public InvalidPageLimitException(int page) {
+        super("Page index [" + page + "] must not be negative!");
+    }
+}
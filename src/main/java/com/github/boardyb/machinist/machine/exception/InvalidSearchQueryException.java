@@ -0,0 +1,8 @@
+package com.github.boardyb.machinist.machine.exception;
+
+public class InvalidSearchQueryException extends MachineException {
+
+    public InvalidSearchQueryException(String query) {
+        super("Search query [" + query + "] must not be blank!");
+    }
+}
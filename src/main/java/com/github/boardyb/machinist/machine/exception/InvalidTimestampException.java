@@ -0,0 +1,8 @@
+package com.github.boardyb.machinist.machine.exception;
+
+public class InvalidTimestampException extends MachineException {
+
+    public InvalidTimestampException(String timestamp) {
+        super("Timestamp [" + timestamp + "] is invalid, it must be an ISO-8601 local date and time!");
+    }
+}
@@ -1,6 +1,6 @@
 package com.github.boardyb.machinist.machine.exception;
 
-public class MachineDoesNotExistException extends RuntimeException {
+public class MachineDoesNotExistException extends MachineException {
 
     public MachineDoesNotExistException(String id) {
         super("Machine with id [" + id + "] does not exist!");
@@ -0,0 +1,123 @@
+package com.github.boardyb.machinist.machine.exception;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Logs the errors returned by the machine API without flooding the log when clients repeat the same mistake.
+ * Every type of error of every operation may log {@code machinist.errors.log-limit} lines in every
+ * {@code machinist.errors.log-interval}, after which only every {@code machinist.errors.log-sample-rate}-th error
+ * is logged. The errors which are not logged are counted, and the next logged line tells how many of them were
+ * suppressed since the previous one.
+ * <p>
+ * Errors are logged by their message, stack traces are only captured and logged when
+ * {@code machinist.errors.stack-traces} is turned on.
+ */
+@Slf4j
+@Component
+public class MachineErrorLog {
+
+    static final String SUPPRESSED_METRIC_NAME = "machinist.errors.suppressed";
+
+    private final MeterRegistry meterRegistry;
+    private final boolean stackTraces;
+    private final int limit;
+    private final long intervalNanos;
+    private final int sampleRate;
+    private final LongSupplier nanoTime;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MachineErrorLog(MeterRegistry meterRegistry,
+                           @Value("${machinist.errors.stack-traces:false}") boolean stackTraces,
+                           @Value("${machinist.errors.log-limit:10}") int limit,
+                           @Value("${machinist.errors.log-interval:PT1M}") Duration interval,
+                           @Value("${machinist.errors.log-sample-rate:100}") int sampleRate) {
+        this(meterRegistry, stackTraces, limit, interval, sampleRate, System::nanoTime);
+    }
+
+    MachineErrorLog(MeterRegistry meterRegistry, boolean stackTraces, int limit, Duration interval, int sampleRate,
+                    LongSupplier nanoTime) {
+        this.meterRegistry = meterRegistry;
+        this.stackTraces = stackTraces;
+        this.limit = limit;
+        this.intervalNanos = interval.toNanos();
+        this.sampleRate = Math.max(1, sampleRate);
+        this.nanoTime = nanoTime;
+        MachineException.setStackTraceEnabled(stackTraces);
+    }
+
+    /**
+     * Logs the error returned by the provided operation, unless too many errors of its type were logged recently.
+     *
+     * @return true if the error was logged.
+     */
+    public boolean log(Exception e, String operation) {
+        String exception = e.getClass().getSimpleName();
+        Window window = this.windows.computeIfAbsent(exception + '|' + operation,
+                key -> new Window(Counter.builder(SUPPRESSED_METRIC_NAME)
+                        .description("Errors of the machine API which were not logged")
+                        .tag("exception", exception)
+                        .tag("operation", operation)
+                        .register(this.meterRegistry)));
+        long suppressed = window.record(this.nanoTime.getAsLong());
+        if (suppressed < 0) {
+            return false;
+        }
+        String message = suppressed == 0
+                ? "Operation [" + operation + "] failed: " + e.getMessage()
+                : "Operation [" + operation + "] failed: " + e.getMessage()
+                + " ([" + suppressed + "] similar errors were not logged)";
+        if (this.stackTraces) {
+            log.warn(message, e);
+        } else {
+            log.warn(message);
+        }
+        return true;
+    }
+
+    /**
+     * The errors of one type of one operation in the current interval.
+     */
+    private final class Window {
+
+        private final Counter suppressedCounter;
+        private long start;
+        private long count;
+        private long suppressed;
+
+        private Window(Counter suppressedCounter) {
+            this.suppressedCounter = suppressedCounter;
+            this.start = nanoTime.getAsLong();
+        }
+
+        /**
+         * @return the number of errors which were suppressed since the last logged one if this one is logged,
+         * -1 if it is suppressed.
+         */
+        private synchronized long record(long now) {
+            if (now - this.start >= intervalNanos) {
+                this.start = now;
+                this.count = 0;
+            }
+            this.count++;
+            if (this.count <= limit || (this.count - limit) % sampleRate == 0) {
+                long suppressedSinceLogged = this.suppressed;
+                this.suppressed = 0;
+                return suppressedSinceLogged;
+            }
+            this.suppressed++;
+            this.suppressedCounter.increment();
+            return -1;
+        }
+    }
+}
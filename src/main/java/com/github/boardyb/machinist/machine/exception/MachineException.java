@@ -0,0 +1,23 @@
+package com.github.boardyb.machinist.machine.exception;
+
+/**
+ * Base of the exceptions which are mapped to error responses of the machine API. They are thrown on hot paths,
+ * like fetching machines which do not exist or shedding load, and are reported by their message, so they do not
+ * fill in their stack traces, unless this is turned on with {@code machinist.errors.stack-traces} for debugging.
+ */
+public abstract class MachineException extends RuntimeException {
+
+    private static volatile boolean stackTraceEnabled;
+
+    protected MachineException(String message) {
+        super(message, null, false, stackTraceEnabled);
+    }
+
+    public static boolean isStackTraceEnabled() {
+        return stackTraceEnabled;
+    }
+
+    public static void setStackTraceEnabled(boolean stackTraceEnabled) {
+        MachineException.stackTraceEnabled = stackTraceEnabled;
+    }
+}
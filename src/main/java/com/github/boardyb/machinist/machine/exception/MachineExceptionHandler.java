@@ -1,23 +1,43 @@
 package com.github.boardyb.machinist.machine.exception;
 
 import com.github.boardyb.restmodel.ErrorResponse;
-import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.exception.ExceptionUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.HandlerMethod;
 
 import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-@Slf4j
 @RestControllerAdvice
 public class MachineExceptionHandler {
 
+    static final String ERROR_METRIC_NAME = "machinist.errors";
+
+    static final String UNKNOWN_OPERATION = "unknown";
+
+    private final MeterRegistry meterRegistry;
+    private final MachineErrorLog errorLog;
+    private final Map<Class<?>, Counter> errorCounters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MachineExceptionHandler(MeterRegistry meterRegistry, MachineErrorLog errorLog) {
+        this.meterRegistry = meterRegistry;
+        this.errorLog = errorLog;
+    }
+
     @ExceptionHandler(MachineDoesNotExistException.class)
-    public ResponseEntity<?> handleMachineNotFoundException(MachineDoesNotExistException e) {
-        log.error("\n" + ExceptionUtils.getStackTrace(e));
+    public ResponseEntity<?> handleMachineNotFoundException(MachineDoesNotExistException e,
+                                                            HandlerMethod handlerMethod) {
+        countError(e);
+        this.errorLog.log(e, operationOf(handlerMethod));
         ErrorResponse errorResponse = new ErrorResponse();
         errorResponse.setMessage(e.getMessage());
         errorResponse.setStatus(HttpStatus.NOT_FOUND.value());
@@ -27,12 +47,85 @@ public class MachineExceptionHandler {
     }
 
     @ExceptionHandler(MethodArgumentNotValidException.class)
-    public ResponseEntity<?> handleInvalidArgumentException(MethodArgumentNotValidException e) {
-        log.error("\n" + ExceptionUtils.getStackTrace(e));
+    public ResponseEntity<?> handleInvalidArgumentException(MethodArgumentNotValidException e,
+                                                            HandlerMethod handlerMethod) {
+        countError(e);
+        this.errorLog.log(e, operationOf(handlerMethod));
+        ErrorResponse errorResponse = new ErrorResponse();
+        errorResponse.setMessage(e.getMessage());
+        errorResponse.setStatus(HttpStatus.BAD_REQUEST.value());
+        errorResponse.setTimestamp(LocalDateTime.now());
+        return ResponseEntity.badRequest().body(errorResponse);
+    }
+
+    @ExceptionHandler({
+            InvalidCursorException.class,
+            InvalidFieldsException.class,
+            InvalidIdempotencyKeyException.class,
+            InvalidPageLimitException.class,
+            InvalidSearchQueryException.class,
+            InvalidTimestampException.class,
+            BatchSizeExceededException.class
+    })
+    public ResponseEntity<?> handleInvalidRequestException(MachineException e, HandlerMethod handlerMethod) {
+        countError(e);
+        this.errorLog.log(e, operationOf(handlerMethod));
         ErrorResponse errorResponse = new ErrorResponse();
         errorResponse.setMessage(e.getMessage());
         errorResponse.setStatus(HttpStatus.BAD_REQUEST.value());
         errorResponse.setTimestamp(LocalDateTime.now());
         return ResponseEntity.badRequest().body(errorResponse);
     }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<?> handleIdempotencyKeyReusedException(IdempotencyKeyReusedException e,
+                                                                 HandlerMethod handlerMethod) {
+        countError(e);
+        this.errorLog.log(e, operationOf(handlerMethod));
+        ErrorResponse errorResponse = new ErrorResponse();
+        errorResponse.setMessage(e.getMessage());
+        errorResponse.setStatus(HttpStatus.UNPROCESSABLE_ENTITY.value());
+        errorResponse.setTimestamp(LocalDateTime.now());
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(errorResponse);
+    }
+
+    @ExceptionHandler(ExpiredWatermarkException.class)
+    public ResponseEntity<?> handleExpiredWatermarkException(ExpiredWatermarkException e, HandlerMethod handlerMethod) {
+        countError(e);
+        this.errorLog.log(e, operationOf(handlerMethod));
+        ErrorResponse errorResponse = new ErrorResponse();
+        errorResponse.setMessage(e.getMessage());
+        errorResponse.setStatus(HttpStatus.GONE.value());
+        errorResponse.setTimestamp(LocalDateTime.now());
+        return ResponseEntity.status(HttpStatus.GONE).body(errorResponse);
+    }
+
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<?> handleServiceOverloadedException(ServiceOverloadedException e,
+                                                              HandlerMethod handlerMethod) {
+        countError(e);
+        this.errorLog.log(e, operationOf(handlerMethod));
+        ErrorResponse errorResponse = new ErrorResponse();
+        errorResponse.setMessage(e.getMessage());
+        errorResponse.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        errorResponse.setTimestamp(LocalDateTime.now());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(errorResponse);
+    }
+
+    private static String operationOf(HandlerMethod handlerMethod) {
+        return handlerMethod == null ? UNKNOWN_OPERATION : handlerMethod.getMethod().getName();
+    }
+
+    private void countError(Exception e) {
+        Counter counter = this.errorCounters.get(e.getClass());
+        if (counter == null) {
+            counter = this.errorCounters.computeIfAbsent(e.getClass(), type -> Counter.builder(ERROR_METRIC_NAME)
+                    .description("Errors returned by the machine API")
+                    .tag("exception", type.getSimpleName())
+                    .register(this.meterRegistry));
+        }
+        counter.increment();
+    }
 }
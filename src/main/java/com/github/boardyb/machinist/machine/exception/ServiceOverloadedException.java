@@ -0,0 +1,14 @@
+package com.github.boardyb.machinist.machine.exception;
+
+import lombok.Getter;
+
+@Getter
+public class ServiceOverloadedException extends MachineException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceOverloadedException(String operation, long retryAfterSeconds) {
+        super("Too many concurrent requests of operation [" + operation + "], try again later!");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.boardyb.machinist.startup;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Selects the beans which are still created at startup by the {@code fast-startup} profile, which creates all the
+ * other beans on their first use. The controllers are created at startup, so the services, repositories and the
+ * entity manager factory behind them are ready for the first request, and so are the beans with scheduled jobs,
+ * which are never used by other beans and would not run otherwise.
+ */
+@Configuration
+@Profile("fast-startup")
+public class FastStartupConfiguration {
+
+    /**
+     * Declared static, because it is looked up before the beans of the context are created.
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter eagerBeansFilter() {
+        return (beanName, beanDefinition, beanType) -> beanType != null
+                && (AnnotatedElementUtils.hasAnnotation(beanType, Controller.class) || hasScheduledMethods(beanType));
+    }
+
+    private static boolean hasScheduledMethods(Class<?> beanType) {
+        return !MethodIntrospector.selectMethods(ClassUtils.getUserClass(beanType),
+                (MethodIntrospector.MetadataLookup<Scheduled>) method ->
+                        AnnotatedElementUtils.findMergedAnnotation(method, Scheduled.class)).isEmpty();
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.boardyb.machinist.web;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Ignores the flushes of responses with the provided content types until they are complete. The message converters
+ * and the handlers of the returned entities flush the response after writing the body, which commits it without a
+ * {@code Content-Length}, and the server compresses every response of unknown length regardless of
+ * {@code server.compression.min-response-size}. Without the flush, a body which fits into the response buffer gets
+ * its length when the response is closed, so only bodies above the threshold are compressed. Streaming responses,
+ * such as the change feed and the export, have other content types and are flushed as before.
+ */
+public class DeferredFlushFilter extends OncePerRequestFilter {
+
+    private final List<MediaType> deferredTypes;
+
+    public DeferredFlushFilter(List<MediaType> deferredTypes) {
+        this.deferredTypes = deferredTypes;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        filterChain.doFilter(request, new DeferredFlushResponse(response));
+    }
+
+    private boolean isDeferred(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+        for (MediaType deferredType : this.deferredTypes) {
+            if (deferredType.includes(mediaType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class DeferredFlushResponse extends HttpServletResponseWrapper {
+
+        private ServletOutputStream outputStream;
+
+        DeferredFlushResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (this.outputStream == null) {
+                this.outputStream = new DeferredFlushOutputStream(this, super.getOutputStream());
+            }
+            return this.outputStream;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (!isDeferred(getContentType())) {
+                super.flushBuffer();
+            }
+        }
+    }
+
+    private class DeferredFlushOutputStream extends ServletOutputStream {
+
+        private final HttpServletResponse response;
+        private final ServletOutputStream delegate;
+
+        DeferredFlushOutputStream(HttpServletResponse response, ServletOutputStream delegate) {
+            this.response = response;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.delegate.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.delegate.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!isDeferred(this.response.getContentType())) {
+                this.delegate.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return this.delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            this.delegate.setWriteListener(writeListener);
+        }
+    }
+}
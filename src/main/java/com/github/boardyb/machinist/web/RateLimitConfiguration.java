@@ -0,0 +1,72 @@
+package com.github.boardyb.machinist.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Puts the {@link RateLimitFilter} in front of the API. The costs of operations are set with
+ * {@code machinist.rate-limit.costs.<operationId>}, the API keys which get their own buckets with
+ * {@code machinist.rate-limit.api-keys}, the operation of a request is resolved by the handler mapping
+ * of the controllers, and its id is the name of the handler method. The handler mapping is looked up lazily, because
+ * it depends on the meter registry, which binds the metrics of the filter.
+ */
+@Configuration
+@ConditionalOnProperty(name = "machinist.rate-limit.enabled", matchIfMissing = true)
+public class RateLimitConfiguration {
+
+    @Bean
+    public RateLimitFilter rateLimitFilter(@Value("${machinist.rate-limit.capacity:100}") long capacity,
+                                           @Value("${machinist.rate-limit.tokens-per-second:20}") double tokensPerSecond,
+                                           @Value("${machinist.rate-limit.idle-timeout:PT5M}") Duration idleTimeout,
+                                           @Value("${machinist.rate-limit.maximum-clients:100000}") long maximumClients,
+                                           @Value("${machinist.rate-limit.api-keys:}") Set<String> apiKeys,
+                                           Environment environment,
+                                           ObjectMapper objectMapper,
+                                           @Lazy @Qualifier("requestMappingHandlerMapping") HandlerMapping handlerMapping) {
+        return new RateLimitFilter(capacity, tokensPerSecond, idleTimeout, maximumClients, Binder.get(environment)
+                .bind("machinist.rate-limit.costs", Bindable.mapOf(String.class, Integer.class))
+                .orElse(Collections.emptyMap()), apiKeys, operationsOf(handlerMapping), objectMapper);
+    }
+
+    /**
+     * Registers the filter for the API only, after the metrics filter, so the rejected requests are measured too.
+     */
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration(RateLimitFilter rateLimitFilter) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(rateLimitFilter);
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+        return registration;
+    }
+
+    private static Function<HttpServletRequest, String> operationsOf(HandlerMapping handlerMapping) {
+        return request -> {
+            try {
+                HandlerExecutionChain chain = handlerMapping.getHandler(request);
+                Object handler = chain == null ? null : chain.getHandler();
+                return handler instanceof HandlerMethod ? ((HandlerMethod) handler).getMethod().getName() : null;
+            } catch (Exception e) {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,175 @@
+package com.github.boardyb.machinist.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.boardyb.restmodel.ErrorResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Limits the rate of the requests of every client with a {@link TokenBucket}, so a single client can not take the
+ * connection pool away from the others. Clients are told apart by their {@value #API_KEY_HEADER} header if it
+ * is one of the configured API keys, or by their address otherwise, so clients can not get fresh buckets by sending
+ * made up keys. The address is only the one of the client behind a load balancer if the forwarded headers are
+ * trusted, see {@code server.forward-headers-strategy}. Every operation takes one token from the bucket of the
+ * client, unless it has its own cost, so expensive operations like fetching all machines drain the bucket faster.
+ * <p>
+ * The state of the limit is sent in the {@code RateLimit-*} headers of every response, and requests which do not fit
+ * into the bucket are rejected with HTTP 429 and a {@code Retry-After} header. The buckets of idle clients are
+ * evicted once they are full again, and the number of buckets is bounded, so many distinct clients can not exhaust
+ * the memory.
+ */
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter implements MeterBinder {
+
+    static final String API_KEY_HEADER = "X-Api-Key";
+    static final String LIMIT_HEADER = "RateLimit-Limit";
+    static final String REMAINING_HEADER = "RateLimit-Remaining";
+    static final String RESET_HEADER = "RateLimit-Reset";
+    static final String METRIC_PREFIX = "machinist.rate-limit";
+    static final String UNKNOWN_OPERATION = "unknown";
+
+    private final long capacity;
+    private final long nanosPerToken;
+    private final Map<String, Integer> costs;
+    private final Set<String> apiKeys;
+    private final Function<HttpServletRequest, String> operations;
+    private final ObjectMapper objectMapper;
+    private final Ticker ticker;
+    private final Cache<String, TokenBucket> buckets;
+    private final Map<String, Counter> rejectionCounters = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+
+    /**
+     * @param capacity          the number of tokens a client can spend in a burst.
+     * @param tokensPerSecond   the rate at which the buckets are refilled.
+     * @param idleTimeout       the time after the last request of a client after which its bucket is evicted,
+     *                          it is extended to the time which a drained bucket takes to be refilled.
+     * @param maximumClients    the maximum number of buckets which are kept.
+     * @param costs             the number of tokens of the operations which do not cost one token.
+     * @param apiKeys           the API keys which get their own buckets.
+     * @param operations        resolves the id of the operation of a request, or null if it is not an operation.
+     */
+    public RateLimitFilter(long capacity, double tokensPerSecond, Duration idleTimeout, long maximumClients,
+                           Map<String, Integer> costs, Set<String> apiKeys,
+                           Function<HttpServletRequest, String> operations, ObjectMapper objectMapper) {
+        this(capacity, tokensPerSecond, idleTimeout, maximumClients, costs, apiKeys, operations, objectMapper,
+                Ticker.systemTicker());
+    }
+
+    RateLimitFilter(long capacity, double tokensPerSecond, Duration idleTimeout, long maximumClients,
+                    Map<String, Integer> costs, Set<String> apiKeys, Function<HttpServletRequest, String> operations,
+                    ObjectMapper objectMapper, Ticker ticker) {
+        this.capacity = capacity;
+        this.nanosPerToken = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / tokensPerSecond));
+        this.costs = costs;
+        this.apiKeys = apiKeys;
+        this.operations = operations;
+        this.objectMapper = objectMapper;
+        this.ticker = ticker;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maximumClients)
+                .expireAfterAccess(Math.max(idleTimeout.toNanos(), capacity * this.nanosPerToken), TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String operation = this.operations.apply(request);
+        if (operation == null) {
+            operation = UNKNOWN_OPERATION;
+        }
+        long now = this.ticker.read();
+        TokenBucket bucket = this.buckets.get(clientOf(request),
+                client -> new TokenBucket(this.capacity, this.nanosPerToken, now));
+        TokenBucket.Consumption consumption = bucket.tryConsume(this.costs.getOrDefault(operation, 1), now);
+        response.setHeader(LIMIT_HEADER, String.valueOf(this.capacity));
+        response.setHeader(REMAINING_HEADER, String.valueOf(consumption.getRemainingTokens()));
+        response.setHeader(RESET_HEADER, String.valueOf(toSeconds(consumption.getNanosUntilFull())));
+        if (consumption.isConsumed()) {
+            filterChain.doFilter(request, response);
+        } else {
+            reject(operation, toSeconds(consumption.getNanosUntilAvailable()), response);
+        }
+    }
+
+    private String clientOf(HttpServletRequest request) {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        return apiKey != null && this.apiKeys.contains(apiKey) ? "key:" + apiKey : "address:" + request.getRemoteAddr();
+    }
+
+    private static long toSeconds(long nanos) {
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private void reject(String operation, long retryAfterSeconds, HttpServletResponse response) throws IOException {
+        countRejection(operation);
+        String message = "Too many requests of operation [" + operation + "], retry after ["
+                + retryAfterSeconds + "] seconds!";
+        log.debug(message);
+        ErrorResponse errorResponse = new ErrorResponse();
+        errorResponse.setMessage(message);
+        errorResponse.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        errorResponse.setTimestamp(LocalDateTime.now());
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        this.objectMapper.writeValue(response.getOutputStream(), errorResponse);
+    }
+
+    private void countRejection(String operation) {
+        MeterRegistry registry = this.meterRegistry;
+        if (registry == null) {
+            return;
+        }
+        Counter counter = this.rejectionCounters.get(operation);
+        if (counter == null) {
+            counter = this.rejectionCounters.computeIfAbsent(operation, key ->
+                    Counter.builder(METRIC_PREFIX + ".rejections")
+                            .description("Requests rejected by the rate limit of their client")
+                            .tag("operation", key)
+                            .register(registry));
+        }
+        counter.increment();
+    }
+
+    /**
+     * Returns the number of clients whose buckets are kept, after evicting the idle ones.
+     */
+    long getTrackedClients() {
+        this.buckets.cleanUp();
+        return this.buckets.estimatedSize();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+        Gauge.builder(METRIC_PREFIX + ".clients", this, RateLimitFilter::getTrackedClients)
+                .description("Clients whose rate limit buckets are kept")
+                .register(registry);
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.boardyb.machinist.web;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import java.util.Arrays;
+
+/**
+ * Sets up the representations of the responses. Smile ({@code application/x-jackson-smile}) and CBOR
+ * ({@code application/cbor}) are served when the {@code Accept} header of the request asks for them, with object
+ * mappers built by the {@code spring.jackson.*} configured builder of the application, so they carry the same fields,
+ * dates and modules as JSON, which stays the default. The compression of these responses is set up with the
+ * {@code server.compression.*} properties. Since the representations share their ETags, the responses vary by the
+ * {@code Accept} header for caches.
+ */
+@Configuration
+public class ResponseEncodingConfiguration {
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public FilterRegistrationBean<VaryAcceptFilter> varyAcceptFilter() {
+        FilterRegistrationBean<VaryAcceptFilter> registration = new FilterRegistrationBean<>(new VaryAcceptFilter());
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "server.compression.enabled", havingValue = "true")
+    public FilterRegistrationBean<DeferredFlushFilter> deferredFlushFilter() {
+        return new FilterRegistrationBean<>(new DeferredFlushFilter(Arrays.asList(
+                MediaType.APPLICATION_JSON,
+                MediaType.valueOf("application/x-jackson-smile"),
+                MediaType.APPLICATION_CBOR)));
+    }
+}
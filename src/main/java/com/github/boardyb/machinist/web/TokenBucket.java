@@ -0,0 +1,94 @@
+package com.github.boardyb.machinist.web;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket which holds at most {@code capacity} tokens and is refilled by one token every
+ * {@code nanosPerToken}. Instead of the number of tokens the bucket stores the time at which it will be full again,
+ * so a consumption is a single compare-and-set of that time and the bucket never has to be refilled by a timer.
+ * The times are read from {@link System#nanoTime()} or a ticker of the same kind, so they are only compared
+ * by their difference.
+ */
+final class TokenBucket {
+
+    private final long capacity;
+    private final long nanosPerToken;
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+
+    TokenBucket(long capacity, long nanosPerToken, long now) {
+        this.capacity = capacity;
+        this.nanosPerToken = nanosPerToken;
+        this.capacityNanos = capacity * nanosPerToken;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes the provided number of tokens from the bucket if it holds enough of them, otherwise leaves the bucket
+     * as it is.
+     */
+    Consumption tryConsume(long tokens, long now) {
+        long costNanos = Math.min(tokens, this.capacity) * this.nanosPerToken;
+        while (true) {
+            long currentFullAt = this.fullAt.get();
+            long nanosUntilFull = Math.max(0, currentFullAt - now);
+            long consumedFullAt = now + nanosUntilFull + costNanos;
+            long consumedNanosUntilFull = nanosUntilFull + costNanos;
+            if (consumedNanosUntilFull > this.capacityNanos) {
+                return new Consumption(false, availableTokens(nanosUntilFull), nanosUntilFull,
+                        consumedNanosUntilFull - this.capacityNanos);
+            }
+            if (this.fullAt.compareAndSet(currentFullAt, consumedFullAt)) {
+                return new Consumption(true, availableTokens(consumedNanosUntilFull), consumedNanosUntilFull, 0);
+            }
+        }
+    }
+
+    long getCapacity() {
+        return this.capacity;
+    }
+
+    private long availableTokens(long nanosUntilFull) {
+        return (this.capacityNanos - nanosUntilFull) / this.nanosPerToken;
+    }
+
+    /**
+     * The outcome of an attempt to take tokens from the bucket, with the state of the bucket after it.
+     */
+    static final class Consumption {
+
+        private final boolean consumed;
+        private final long remainingTokens;
+        private final long nanosUntilFull;
+        private final long nanosUntilAvailable;
+
+        Consumption(boolean consumed, long remainingTokens, long nanosUntilFull, long nanosUntilAvailable) {
+            this.consumed = consumed;
+            this.remainingTokens = remainingTokens;
+            this.nanosUntilFull = nanosUntilFull;
+            this.nanosUntilAvailable = nanosUntilAvailable;
+        }
+
+        boolean isConsumed() {
+            return this.consumed;
+        }
+
+        long getRemainingTokens() {
+            return this.remainingTokens;
+        }
+
+        /**
+         * The time after which the bucket is full again if no more tokens are taken.
+         */
+        long getNanosUntilFull() {
+            return this.nanosUntilFull;
+        }
+
+        /**
+         * The time after which the bucket holds enough tokens for a rejected consumption, 0 if it was consumed.
+         */
+        long getNanosUntilAvailable() {
+            return this.nanosUntilAvailable;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.boardyb.machinist.web;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Adds {@code Vary: Accept} to the responses, which are negotiated between JSON, Smile and CBOR by the {@code Accept}
+ * header of the request, so shared caches store a response per representation instead of serving one representation
+ * to clients which asked for another. The header is set before the response is written, since the response may be
+ * committed by then. {@code Vary: Accept-Encoding} is added by the server to the responses it may compress.
+ */
+public class VaryAcceptFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        filterChain.doFilter(request, response);
+    }
+}
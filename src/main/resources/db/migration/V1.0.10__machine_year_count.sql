@@ -0,0 +1,25 @@
+CREATE TABLE machinist.machine_year_count
+(
+  year_of_production   SMALLINT PRIMARY KEY NOT NULL,
+  machine_count        BIGINT NOT NULL
+);
+
+-- Every valid year of production, and 0 for the machines without one, gets a counter up front, so the
+-- transactions which change the machines only ever update counters.
+INSERT INTO machinist.machine_year_count (year_of_production, machine_count)
+WITH RECURSIVE valid_year (value) AS (
+  SELECT 1950
+  UNION ALL
+  SELECT value + 1 FROM valid_year WHERE value < 2020
+),
+counted_year (value) AS (
+  SELECT 0
+  UNION
+  SELECT value FROM valid_year
+  UNION
+  SELECT COALESCE(year_of_production, 0) FROM machinist.machine
+)
+SELECT y.value, COUNT(m.id)
+FROM counted_year y
+LEFT JOIN machinist.machine m ON COALESCE(m.year_of_production, 0) = y.value AND m.deleted = false
+GROUP BY y.value;
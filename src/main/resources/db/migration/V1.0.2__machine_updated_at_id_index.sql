@@ -0,0 +1 @@
+CREATE INDEX machine_updated_at_id_idx ON machinist.machine (updated_at DESC, id DESC);
@@ -0,0 +1 @@
+ALTER TABLE machinist.machine ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,13 @@
+CREATE TABLE machinist.machine_archive
+(
+  id                   VARCHAR(50) PRIMARY KEY NOT NULL,
+  created_at           TIMESTAMP,
+  updated_at           TIMESTAMP,
+  name                 VARCHAR(100),
+  description          VARCHAR(1000),
+  year_of_production   SMALLINT,
+  version              BIGINT NOT NULL,
+  archived_at          TIMESTAMP NOT NULL
+);
+
+CREATE INDEX machine_archive_updated_at_idx ON machinist.machine_archive (updated_at);
@@ -0,0 +1,48 @@
+CREATE TABLE machinist.machine_revision
+(
+  machine_id           VARCHAR(50) NOT NULL,
+  revision             BIGINT NOT NULL,
+  change_type          VARCHAR(20) NOT NULL,
+  changed_at           TIMESTAMP NOT NULL,
+  changed_fields       VARCHAR(100),
+  name                 VARCHAR(100),
+  description          VARCHAR(1000),
+  year_of_production   SMALLINT,
+  PRIMARY KEY (machine_id, revision)
+);
+
+CREATE INDEX machine_revision_changed_at_machine_id_idx ON machinist.machine_revision (changed_at, machine_id);
+
+-- Machines changed before their version was introduced are at version 0, they are moved to version 1 so their
+-- change gets a revision of its own after the revision 0 of their creation.
+UPDATE machinist.machine SET version = 1
+WHERE version = 0 AND (updated_at > created_at OR deleted = true);
+
+UPDATE machinist.machine_archive SET version = 1
+WHERE version = 0;
+
+-- The values of the machines before their last change are unknown, so their creation is seeded with their current
+-- values, followed by a revision of their last update or deletion which only records its time.
+INSERT INTO machinist.machine_revision
+  (machine_id, revision, change_type, changed_at, changed_fields, name, description, year_of_production)
+SELECT id, 0, 'CREATED', COALESCE(created_at, updated_at), 'name,description,yearOfProduction', name, description,
+       year_of_production
+FROM machinist.machine
+WHERE COALESCE(created_at, updated_at) IS NOT NULL;
+
+INSERT INTO machinist.machine_revision (machine_id, revision, change_type, changed_at)
+SELECT id, version, CASE WHEN deleted = true THEN 'DELETED' ELSE 'UPDATED' END, updated_at
+FROM machinist.machine
+WHERE version > 0 AND updated_at IS NOT NULL;
+
+INSERT INTO machinist.machine_revision
+  (machine_id, revision, change_type, changed_at, changed_fields, name, description, year_of_production)
+SELECT id, 0, 'CREATED', COALESCE(created_at, updated_at), 'name,description,yearOfProduction', name, description,
+       year_of_production
+FROM machinist.machine_archive
+WHERE COALESCE(created_at, updated_at) IS NOT NULL;
+
+INSERT INTO machinist.machine_revision (machine_id, revision, change_type, changed_at)
+SELECT id, version, 'DELETED', updated_at
+FROM machinist.machine_archive
+WHERE updated_at IS NOT NULL;
@@ -0,0 +1,9 @@
+CREATE TABLE machinist.machine_idempotency_key
+(
+  idempotency_key      VARCHAR(100) PRIMARY KEY NOT NULL,
+  request_hash         VARCHAR(64) NOT NULL,
+  machine_id           VARCHAR(50) NOT NULL,
+  created_at           TIMESTAMP NOT NULL
+);
+
+CREATE INDEX machine_idempotency_key_created_at_idx ON machinist.machine_idempotency_key (created_at);
@@ -0,0 +1,79 @@
+package com.github.boardyb.machinist;
+
+import com.github.boardyb.machinist.machine.IntegrationTestConfiguration;
+import com.github.boardyb.machinist.machine.MachineController;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Starts the application against the in-memory H2 database and serves its first requests. It is run by the
+ * {@code app-cds} profile of the build with {@code -XX:DumpLoadedClassList}, which lists the classes loaded by a cold
+ * start for the AppCDS archive of the Docker image, and the startup benchmark starts the application the same way.
+ * The profiles of the application are taken from the arguments.
+ */
+public final class StartupTrainingRun {
+
+    private StartupTrainingRun() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        try (ConfigurableApplicationContext applicationContext = start(args)) {
+            int port = portOf(applicationContext);
+            send("POST", port, "/api/machine", "{\"name\":\"Milling machine\",\"yearOfProduction\":2013}");
+            send("GET", port, "/api/machine/all", null);
+            send("GET", port, "/api/machine/search?q=milling", null);
+            send("GET", port, "/api/machine/missing", null);
+            System.out.println("First requests served [" + ManagementFactory.getRuntimeMXBean().getUptime()
+                    + "] ms after the start of the JVM.");
+        }
+    }
+
+    public static ConfigurableApplicationContext start(String... profiles) {
+        return new SpringApplicationBuilder(MachinistApplication.class, MachineController.class,
+                IntegrationTestConfiguration.class)
+                .profiles(profiles)
+                .properties("server.port=0")
+                .run();
+    }
+
+    public static int portOf(ConfigurableApplicationContext applicationContext) {
+        return ((WebServerApplicationContext) applicationContext).getWebServer().getPort();
+    }
+
+    /**
+     * Sends a request to the started application, and returns the status of its response.
+     */
+    public static int send(String method, int port, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        try {
+            connection.setRequestMethod(method);
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream outputStream = connection.getOutputStream()) {
+                    outputStream.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int status = connection.getResponseCode();
+            try (InputStream inputStream = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (inputStream != null) {
+                    while (inputStream.read() != -1) {
+                        // drains the response, so the connection can be reused
+                    }
+                }
+            }
+            return status;
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
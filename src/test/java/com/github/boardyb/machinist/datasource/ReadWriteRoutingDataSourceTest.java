@@ -0,0 +1,124 @@
+package com.github.boardyb.machinist.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class ReadWriteRoutingDataSourceTest {
+
+    private static final String PRIMARY_URL = "jdbc:h2:mem:primaryDB;DB_CLOSE_DELAY=-1";
+    private static final String REPLICA_URL = "jdbc:h2:mem:replicaDB;DB_CLOSE_DELAY=-1";
+    private static final String UNREACHABLE_URL = "jdbc:h2:tcp://localhost:1/unreachableDB";
+
+    private DataSource primary;
+    private DataSource replica;
+
+    @BeforeEach
+    void setUp() {
+        this.primary = createDatabase(PRIMARY_URL, "primary");
+        this.replica = createDatabase(REPLICA_URL, "replica");
+    }
+
+    @AfterEach
+    void tearDown() {
+        new JdbcTemplate(this.primary).execute("DROP TABLE role");
+        new JdbcTemplate(this.replica).execute("DROP TABLE role");
+    }
+
+    /**
+     * - Given: a primary and a replica database.
+     * - When: a read-only and a read-write transaction query the database.
+     * - Then: the read-only transaction should be served by the replica and the read-write one by the primary.
+     */
+    @Test
+    void shouldRouteReadOnlyTransactionsToReplica() {
+        DataSource dataSource = routing(new ReadWriteRoutingDataSource(this.primary,
+                Collections.singletonList(this.replica), 1));
+
+        assertThat(queryRole(dataSource, true), equalTo("replica"));
+        assertThat(queryRole(dataSource, false), equalTo("primary"));
+    }
+
+    /**
+     * - Given: a primary and a replica database, and the reads of the current thread are pinned to the primary.
+     * - When: a read-only transaction queries the database.
+     * - Then: the transaction should be served by the primary.
+     */
+    @Test
+    void shouldRouteReadsToPrimaryIfPrimaryIsForced() {
+        DataSource dataSource = routing(new ReadWriteRoutingDataSource(this.primary,
+                Collections.singletonList(this.replica), 1));
+
+        ReadWriteRoutingDataSource.setPrimaryForced(true);
+        try {
+            assertThat(queryRole(dataSource, true), equalTo("primary"));
+        } finally {
+            ReadWriteRoutingDataSource.setPrimaryForced(false);
+        }
+    }
+
+    /**
+     * - Given: a primary database, a healthy replica and an unreachable replica.
+     * - When: the replicas are checked and read-only transactions query the database.
+     * - Then: the unreachable replica should be excluded and every read should be served by the healthy one.
+     */
+    @Test
+    void shouldExcludeUnhealthyReplicas() {
+        ReadWriteRoutingDataSource routingDataSource = new ReadWriteRoutingDataSource(this.primary,
+                Arrays.asList(new DriverManagerDataSource(UNREACHABLE_URL), this.replica), 1);
+        DataSource dataSource = routing(routingDataSource);
+
+        routingDataSource.checkReplicas();
+
+        assertThat(routingDataSource.getHealthyReplicaCount(), equalTo(1));
+        for (int i = 0; i < 4; i++) {
+            assertThat(queryRole(dataSource, true), equalTo("replica"));
+        }
+    }
+
+    /**
+     * - Given: a primary database and only unreachable replicas.
+     * - When: the replicas are checked and a read-only transaction queries the database.
+     * - Then: the transaction should fall back to the primary.
+     */
+    @Test
+    void shouldFallBackToPrimaryIfNoReplicaIsHealthy() {
+        ReadWriteRoutingDataSource routingDataSource = new ReadWriteRoutingDataSource(this.primary,
+                Collections.singletonList(new DriverManagerDataSource(UNREACHABLE_URL)), 1);
+        DataSource dataSource = routing(routingDataSource);
+
+        routingDataSource.checkReplicas();
+
+        assertThat(queryRole(dataSource, true), equalTo("primary"));
+    }
+
+    private static DataSource routing(ReadWriteRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    private static String queryRole(DataSource dataSource, boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status -> new JdbcTemplate(dataSource).queryForObject("SELECT name FROM role", String.class));
+    }
+
+    private static DataSource createDatabase(String url, String role) {
+        DataSource dataSource = new DriverManagerDataSource(url);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE role (name VARCHAR(20))");
+        jdbcTemplate.update("INSERT INTO role (name) VALUES (?)", role);
+        return dataSource;
+    }
+}
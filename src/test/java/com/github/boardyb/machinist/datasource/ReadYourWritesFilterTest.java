@@ -0,0 +1,77 @@
+package com.github.boardyb.machinist.datasource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+class ReadYourWritesFilterTest {
+
+    private static final Instant NOW = Instant.parse("2020-07-20T15:00:00Z");
+
+    private final ReadYourWritesFilter filter = new ReadYourWritesFilter(Duration.ofSeconds(5),
+            Clock.fixed(NOW, ZoneOffset.UTC));
+
+    /**
+     * - Given: a client which has not written anything recently.
+     * - When: the client sends a write request.
+     * - Then: the request should be served by the primary, and the client should receive a cookie which pins its
+     * reads to the primary for the stickiness time.
+     */
+    @Test
+    void shouldPinClientToPrimaryAfterWrite() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicBoolean primaryForced = new AtomicBoolean();
+
+        this.filter.doFilter(new MockHttpServletRequest("POST", "/api/machine"), response,
+                recordPrimaryForced(primaryForced));
+
+        Cookie cookie = response.getCookie(ReadYourWritesFilter.COOKIE_NAME);
+        assertThat(cookie, notNullValue());
+        assertThat(cookie.getValue(), equalTo(String.valueOf(NOW.toEpochMilli() + 5000)));
+        assertThat(primaryForced.get(), equalTo(true));
+        assertThat(ReadWriteRoutingDataSource.isPrimaryForced(), equalTo(false));
+    }
+
+    /**
+     * - Given: a client which wrote recently and one whose stickiness time has passed.
+     * - When: the clients send read requests with their cookies.
+     * - Then: only the reads of the client which wrote recently should be pinned to the primary.
+     */
+    @Test
+    void shouldPinReadsToPrimaryOnlyWithinStickinessTime() throws Exception {
+        assertThat(isPrimaryForcedForReadWithCookie(NOW.toEpochMilli() + 1000), equalTo(true));
+        assertThat(isPrimaryForcedForReadWithCookie(NOW.toEpochMilli() - 1000), equalTo(false));
+    }
+
+    private boolean isPrimaryForcedForReadWithCookie(long primaryUntil) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/machine/all");
+        request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE_NAME, String.valueOf(primaryUntil)));
+        AtomicBoolean primaryForced = new AtomicBoolean();
+        this.filter.doFilter(request, new MockHttpServletResponse(), recordPrimaryForced(primaryForced));
+        return primaryForced.get();
+    }
+
+    private static MockFilterChain recordPrimaryForced(AtomicBoolean primaryForced) {
+        return new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) {
+                primaryForced.set(ReadWriteRoutingDataSource.isPrimaryForced());
+            }
+        });
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.boardyb.machinist.logging;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+class RequestIdFilterTest {
+
+    private final RequestIdFilter filter = new RequestIdFilter();
+
+    /**
+     * - Given: a request with a request id header.
+     * - When: the request is filtered.
+     * - Then: the request should be served with the id in the log context, the id should be returned in the
+     * response, and the log context should be cleared after the request.
+     */
+    @Test
+    void shouldLogRequestWithProvidedRequestId() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/machine/all");
+        request.addHeader(RequestIdFilter.REQUEST_ID_HEADER, "testRequest1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicReference<String> requestId = new AtomicReference<>();
+
+        this.filter.doFilter(request, response, recordRequestId(requestId));
+
+        assertThat(requestId.get(), equalTo("testRequest1"));
+        assertThat(response.getHeader(RequestIdFilter.REQUEST_ID_HEADER), equalTo("testRequest1"));
+        assertThat(MDC.get(RequestIdFilter.MDC_KEY), nullValue());
+    }
+
+    /**
+     * - Given: a request without a request id header.
+     * - When: the request is filtered.
+     * - Then: the request should be served with a generated id, which is returned in the response.
+     */
+    @Test
+    void shouldGenerateRequestIdIfNotProvided() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicReference<String> requestId = new AtomicReference<>();
+
+        this.filter.doFilter(new MockHttpServletRequest("GET", "/api/machine/all"), response,
+                recordRequestId(requestId));
+
+        assertThat(requestId.get(), notNullValue());
+        assertThat(response.getHeader(RequestIdFilter.REQUEST_ID_HEADER), equalTo(requestId.get()));
+    }
+
+    private static MockFilterChain recordRequestId(AtomicReference<String> requestId) {
+        return new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) {
+                requestId.set(MDC.get(RequestIdFilter.MDC_KEY));
+            }
+        });
+    }
+}
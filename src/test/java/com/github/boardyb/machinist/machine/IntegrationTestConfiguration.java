@@ -3,6 +3,7 @@ package com.github.boardyb.machinist.machine;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
@@ -13,6 +14,7 @@ import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
 
@@ -49,6 +51,24 @@ public class IntegrationTestConfiguration {
         return entityManager;
     }
 
+    /**
+     * H2 has no full-text search, so machines are searched with LIKE patterns instead.
+     */
+    @Bean
+    @Primary
+    public MachineSearch machineSearch(EntityManager entityManager) {
+        return new LikeMachineSearch(entityManager);
+    }
+
+    /**
+     * H2 does not expose its running transactions, so changes are only held back by the settle time.
+     */
+    @Bean
+    @Primary
+    public MachineWriteHorizon machineWriteHorizon() {
+        return new PortableMachineWriteHorizon();
+    }
+
     @Bean
     public PlatformTransactionManager transactionManager(EntityManagerFactory emf) {
         JpaTransactionManager transactionManager = new JpaTransactionManager();
@@ -0,0 +1,72 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.machinist.MachinistApplication;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = {
+        MachinistApplication.class,
+        MachineController.class,
+        MachineExportController.class,
+        IntegrationTestConfiguration.class
+})
+class MachineArchiverTest {
+
+    @Autowired
+    private MachineRepository machineRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    /**
+     * - Given: there are machines which were deleted longer than the retention ago, and machines which are
+     * live or were deleted recently.
+     * - When: the archival of deleted machines is run with a batch size smaller than the number of machines
+     * to archive.
+     * - Then: the machines deleted before the retention are moved to the archive in several batches, the others
+     * are left in the machine table.
+     */
+    @Test
+    void shouldArchiveMachinesDeletedBeforeRetentionInBatches() {
+        LocalDateTime deletedAt = LocalDateTime.of(2000, 1, 1, 12, 0);
+        Machine liveMachine = this.machineRepository.save(new Machine("testMachine1", "this is a test machine", 1999));
+        Machine recentlyDeletedMachine = this.machineRepository.save(new Machine("testMachine2", "this is a test machine", 1999));
+        Machine deletedMachine1 = this.machineRepository.save(new Machine("testMachine3", "this is a test machine", 1999));
+        Machine deletedMachine2 = this.machineRepository.save(new Machine("testMachine4", "this is a test machine", 2005));
+        new TransactionTemplate(this.transactionManager).executeWithoutResult(status -> {
+            this.machineRepository.softDeleteById(recentlyDeletedMachine.getId(), LocalDateTime.now());
+            this.machineRepository.softDeleteByIds(Arrays.asList(deletedMachine1.getId(), deletedMachine2.getId()),
+                    deletedAt);
+        });
+        MachineArchiver machineArchiver = new MachineArchiver(this.machineRepository, this.transactionManager,
+                Duration.ofDays(30), 1);
+
+        int archived = machineArchiver.archiveDeletedMachines();
+
+        assertThat(archived, Matchers.greaterThanOrEqualTo(2));
+        assertThat(this.machineRepository.existsById(liveMachine.getId()), Matchers.equalTo(true));
+        assertThat(this.machineRepository.existsById(recentlyDeletedMachine.getId()), Matchers.equalTo(true));
+        assertThat(this.machineRepository.existsById(deletedMachine1.getId()), Matchers.equalTo(false));
+        assertThat(this.machineRepository.existsById(deletedMachine2.getId()), Matchers.equalTo(false));
+        ArchivedMachine archivedMachine = this.entityManager.find(ArchivedMachine.class, deletedMachine2.getId());
+        assertThat(archivedMachine.getName(), Matchers.equalTo("testMachine4"));
+        assertThat(archivedMachine.getYearOfProduction(), Matchers.equalTo(2005));
+        assertThat(archivedMachine.getUpdatedAt(), Matchers.equalTo(deletedAt));
+        assertThat(archivedMachine.getArchivedAt(), Matchers.notNullValue());
+        assertThat(machineArchiver.archiveDeletedMachines(), Matchers.equalTo(0));
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.machinist.datasource.ReadWriteRoutingDataSource;
+import com.github.boardyb.machinist.machine.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MachineBulkheadTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private MachineBulkhead machineBulkhead;
+
+    @AfterEach
+    void tearDown() {
+        this.release.countDown();
+        this.machineBulkhead.shutdown();
+    }
+
+    /**
+     * - Given: a bulkhead with a single thread and a queue of a single call, both occupied by blocked calls.
+     * - When: another call is submitted.
+     * - Then: the call should be rejected right away, the rejection should be counted, and the queued calls
+     * should complete once they are unblocked.
+     */
+    @Test
+    void shouldRejectCallsIfQueueIsFull() throws Exception {
+        this.machineBulkhead = new MachineBulkhead(true, 1, 1, Duration.ofSeconds(2), Collections.emptyMap());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        this.machineBulkhead.bindTo(meterRegistry);
+        CompletableFuture<String> running = this.machineBulkhead.submit("getAllMachines", this::blockedCall);
+        CompletableFuture<String> queued = this.machineBulkhead.submit("getAllMachines", this::blockedCall);
+
+        ServiceOverloadedException exception = assertThrows(ServiceOverloadedException.class,
+                () -> this.machineBulkhead.submit("getAllMachines", this::blockedCall));
+
+        assertThat(exception.getRetryAfterSeconds(), equalTo(2L));
+        assertThat(meterRegistry.get("machinist.bulkhead.queue.depth").gauge().value(), equalTo(1.0));
+        assertThat(meterRegistry.get("machinist.bulkhead.rejections")
+                .tags("operation", "getAllMachines", "reason", MachineBulkhead.QUEUE_FULL).counter().count(), equalTo(1.0));
+        this.release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS), equalTo("done"));
+        assertThat(queued.get(5, TimeUnit.SECONDS), equalTo("done"));
+    }
+
+    /**
+     * - Given: a bulkhead with a concurrency limit of one call for an operation, which is occupied by a blocked call.
+     * - When: calls of the limited operation and another operation are submitted.
+     * - Then: the call of the limited operation should be rejected, while the other operation should be executed.
+     */
+    @Test
+    void shouldRejectCallsOverTheLimitOfTheOperation() throws Exception {
+        this.machineBulkhead = new MachineBulkhead(true, 4, 10, Duration.ofSeconds(1),
+                Collections.singletonMap("searchMachines", 1));
+        this.machineBulkhead.submit("searchMachines", this::blockedCall);
+
+        assertThrows(ServiceOverloadedException.class, () -> this.machineBulkhead.submit("searchMachines", () -> "done"));
+        assertThat(this.machineBulkhead.submit("getMachineById", () -> "done").get(5, TimeUnit.SECONDS), equalTo("done"));
+    }
+
+    /**
+     * - Given: the reads of the request thread are pinned to the primary database.
+     * - When: a call is submitted to the bulkhead.
+     * - Then: the reads of the call should be pinned to the primary database as well.
+     */
+    @Test
+    void shouldPinReadsOfCallToPrimaryIfRequestIsPinned() throws Exception {
+        this.machineBulkhead = new MachineBulkhead(true, 1, 1, Duration.ofSeconds(1), Collections.emptyMap());
+
+        ReadWriteRoutingDataSource.setPrimaryForced(true);
+        CompletableFuture<Boolean> primaryForced;
+        try {
+            primaryForced = this.machineBulkhead.submit("getMachineById", ReadWriteRoutingDataSource::isPrimaryForced);
+        } finally {
+            ReadWriteRoutingDataSource.setPrimaryForced(false);
+        }
+
+        assertThat(primaryForced.get(5, TimeUnit.SECONDS), equalTo(true));
+    }
+
+    /**
+     * - Given: the log context of the request thread contains the id of the request.
+     * - When: a call is submitted to the bulkhead, and another one after the request.
+     * - Then: the first call should log with the id of the request, and the second one without it.
+     */
+    @Test
+    void shouldHandOverLogContextOfRequestToCall() throws Exception {
+        this.machineBulkhead = new MachineBulkhead(true, 1, 1, Duration.ofSeconds(1), Collections.emptyMap());
+
+        MDC.put("requestId", "testRequest1");
+        CompletableFuture<String> requestId;
+        try {
+            requestId = this.machineBulkhead.submit("getMachineById", () -> MDC.get("requestId"));
+        } finally {
+            MDC.remove("requestId");
+        }
+        CompletableFuture<String> nextRequestId = this.machineBulkhead.submit("getMachineById", () -> MDC.get("requestId"));
+
+        assertThat(requestId.get(5, TimeUnit.SECONDS), equalTo("testRequest1"));
+        assertThat(nextRequestId.get(5, TimeUnit.SECONDS), nullValue());
+    }
+
+    private String blockedCall() {
+        try {
+            this.release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.restmodel.MachineTO;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class MachineCacheTest {
+
+    /**
+     * - Given: the cache is enabled and a machine is not cached yet.
+     * - When: the machine is looked up multiple times.
+     * - Then: the machine should be loaded only once.
+     */
+    @Test
+    void shouldLoadMachineOnlyOnce() {
+        MachineCache machineCache = new MachineCache(true, 100, Duration.ofMinutes(5), Duration.ofSeconds(5));
+        AtomicInteger loads = new AtomicInteger();
+
+        machineCache.get("testId", id -> loadMachine(id, loads));
+        Optional<MachineTO> machine = machineCache.get("testId", id -> loadMachine(id, loads));
+
+        assertThat(machine.get().getId(), equalTo("testId"));
+        assertThat(loads.get(), equalTo(1));
+        assertThat(machineCache.stats().missCount(), equalTo(1L));
+        assertThat(machineCache.stats().hitCount(), equalTo(1L));
+    }
+
+    /**
+     * - Given: the cache is enabled and a machine is cached.
+     * - When: the machine is invalidated outside of a transaction and looked up again.
+     * - Then: the machine should be loaded again.
+     */
+    @Test
+    void shouldLoadMachineAgainAfterInvalidation() {
+        MachineCache machineCache = new MachineCache(true, 100, Duration.ofMinutes(5), Duration.ofSeconds(5));
+        AtomicInteger loads = new AtomicInteger();
+        machineCache.get("testId", id -> loadMachine(id, loads));
+
+        machineCache.invalidate(Collections.singleton("testId"));
+        machineCache.get("testId", id -> loadMachine(id, loads));
+
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    /**
+     * - Given: the cache is enabled and a missing machine is cached with a short time to live.
+     * - When: the machine is looked up again after the time to live has passed.
+     * - Then: the machine should be loaded again.
+     */
+    @Test
+    void shouldExpireMissingMachinesAfterNegativeTimeToLive() throws InterruptedException {
+        MachineCache machineCache = new MachineCache(true, 100, Duration.ofMinutes(5), Duration.ofMillis(10));
+        AtomicInteger loads = new AtomicInteger();
+        machineCache.get("testId", id -> {
+            loads.incrementAndGet();
+            return Optional.empty();
+        });
+
+        Thread.sleep(50);
+        machineCache.get("testId", id -> loadMachine(id, loads));
+
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    /**
+     * - Given: the cache is disabled.
+     * - When: a machine is looked up multiple times.
+     * - Then: the machine should be loaded every time.
+     */
+    @Test
+    void shouldLoadMachineEveryTimeIfCacheIsDisabled() {
+        MachineCache machineCache = new MachineCache(false, 100, Duration.ofMinutes(5), Duration.ofSeconds(5));
+        AtomicInteger loads = new AtomicInteger();
+
+        machineCache.get("testId", id -> loadMachine(id, loads));
+        machineCache.get("testId", id -> loadMachine(id, loads));
+
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    private Optional<MachineTO> loadMachine(String id, AtomicInteger loads) {
+        loads.incrementAndGet();
+        MachineTO machineTO = new MachineTO();
+        machineTO.setId(id);
+        return Optional.of(machineTO);
+    }
+}
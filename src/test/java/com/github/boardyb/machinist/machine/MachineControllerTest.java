@@ -1,10 +1,26 @@
 package com.github.boardyb.machinist.machine;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.github.boardyb.machinist.MachinistApplication;
+import com.github.boardyb.restmodel.BatchCreateMachineResponse;
+import com.github.boardyb.restmodel.BatchCreateMachineResult;
+import com.github.boardyb.restmodel.BulkDeleteMachineRequest;
+import com.github.boardyb.restmodel.BulkOperationResponse;
+import com.github.boardyb.restmodel.BulkUpdateMachineRequest;
 import com.github.boardyb.restmodel.CreateMachineRequest;
 import com.github.boardyb.restmodel.ErrorResponse;
+import com.github.boardyb.restmodel.MachineChanges;
+import com.github.boardyb.restmodel.MachinePage;
+import com.github.boardyb.restmodel.MachineRevisionTO;
+import com.github.boardyb.restmodel.MachineSearchPage;
 import com.github.boardyb.restmodel.MachineTO;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,15 +28,42 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 ;
@@ -28,11 +71,18 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = {
         MachinistApplication.class,
         MachineController.class,
+        MachineExportController.class,
         IntegrationTestConfiguration.class
 })
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class MachineControllerTest {
 
+    /**
+     * The nil UUID is less than every id, so a cursor with it marks the position before every machine modified at
+     * the time of the cursor.
+     */
+    private static final String NIL_ID = "00000000-0000-0000-0000-000000000000";
+
     @Autowired
     private WebApplicationContext applicationContext;
 
@@ -42,6 +92,18 @@ class MachineControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MachineArchiver machineArchiver;
+
+    @LocalServerPort
+    private int port;
+
     private MockMvc mockMvc;
 
     @BeforeEach
@@ -49,6 +111,17 @@ class MachineControllerTest {
         this.mockMvc = MockMvcBuilders.webAppContextSetup(this.applicationContext).build();
     }
 
+    /**
+     * Performs the request and, if the API operation was executed asynchronously, the dispatch of its result.
+     */
+    private ResultActions perform(RequestBuilder requestBuilder) throws Exception {
+        ResultActions resultActions = this.mockMvc.perform(requestBuilder);
+        MvcResult mvcResult = resultActions.andReturn();
+        return mvcResult.getRequest().isAsyncStarted()
+                ? this.mockMvc.perform(asyncDispatch(mvcResult))
+                : resultActions;
+    }
+
     /**
      * - Given: there are machines stored in the database.
      * - When: a request is sent to the API endpoint which is responsible for
@@ -62,7 +135,7 @@ class MachineControllerTest {
         this.machineRepository.save(machine1);
         this.machineRepository.save(machine2);
 
-        MvcResult mvcResult = mockMvc.perform(get("/api/machine/all").characterEncoding("utf-8")).andExpect(status().isOk()).andReturn();
+        MvcResult mvcResult = perform(get("/api/machine/all").characterEncoding("utf-8")).andExpect(status().isOk()).andReturn();
         String contentAsString = mvcResult.getResponse().getContentAsString();
 
         MachineTO[] machineTOs = objectMapper.readValue(contentAsString, MachineTO[].class);
@@ -98,13 +171,111 @@ class MachineControllerTest {
         Machine machine1 = new Machine("testMachine1", "this is a test machine", 1999);
         Machine savedMachine = this.machineRepository.save(machine1);
 
-        MvcResult mvcResult = mockMvc.perform(get("/api/machine/" + savedMachine.getId()).characterEncoding("utf-8")).andExpect(status().isOk()).andReturn();
+        MvcResult mvcResult = perform(get("/api/machine/" + savedMachine.getId()).characterEncoding("utf-8")).andExpect(status().isOk()).andReturn();
         String contentAsString = mvcResult.getResponse().getContentAsString();
         MachineTO machineTO = objectMapper.readValue(contentAsString, MachineTO.class);
 
         assertMachineFieldsWithDTO(savedMachine, machineTO);
     }
 
+    /**
+     * - Given: there is a machine stored in the database.
+     * - When: requests are sent to the API endpoints which are responsible for fetching a single machine and all
+     * machines, accepting Smile and CBOR.
+     * - Then: the stored machine is served in the accepted binary formats.
+     */
+    @Test
+    void shouldFetchMachinesInAcceptedBinaryFormat() throws Exception {
+        Machine savedMachine = this.machineRepository.save(new Machine("testMachine1", "this is a test machine", 1999));
+
+        MvcResult smileResult = perform(get("/api/machine/" + savedMachine.getId()).accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andReturn();
+        MvcResult cborResult = perform(get("/api/machine/all").accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andReturn();
+
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory()).findAndRegisterModules();
+        ObjectMapper cborMapper = new ObjectMapper(new CBORFactory()).findAndRegisterModules();
+        MachineTO smileMachineTO = smileMapper.readValue(smileResult.getResponse().getContentAsByteArray(), MachineTO.class);
+        MachineTO[] cborMachineTOs = cborMapper.readValue(cborResult.getResponse().getContentAsByteArray(), MachineTO[].class);
+        assertMachineFieldsWithDTO(savedMachine, smileMachineTO);
+        assertThat(Arrays.stream(cborMachineTOs).map(MachineTO::getId).collect(Collectors.toList()),
+                Matchers.hasItem(savedMachine.getId()));
+    }
+
+    /**
+     * - Given: there are enough machines stored in the database for the list of them to exceed the compression
+     * threshold.
+     * - When: requests accepting gzip encoding are sent to the API endpoints which are responsible for fetching all
+     * machines and a single machine.
+     * - Then: the list of machines is compressed, the single machine is below the threshold and sent uncompressed,
+     * and both responses vary by the accepted format, the compressed one also by the accepted encoding.
+     */
+    @Test
+    void shouldCompressResponsesAboveThreshold() throws Exception {
+        List<Machine> machines = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            machines.add(new Machine("testMachine" + i, "this is a test machine", 1999));
+        }
+        this.machineRepository.saveAll(machines);
+
+        HttpURLConnection allConnection = openGzipConnection("/api/machine/all");
+        HttpURLConnection singleConnection = openGzipConnection("/api/machine/" + machines.get(0).getId());
+
+        assertThat(allConnection.getResponseCode(), Matchers.equalTo(200));
+        assertThat(allConnection.getHeaderField("Content-Encoding"), Matchers.equalTo("gzip"));
+        try (InputStream inputStream = new GZIPInputStream(allConnection.getInputStream())) {
+            MachineTO[] machineTOs = objectMapper.readValue(inputStream, MachineTO[].class);
+            assertThat(machineTOs.length, Matchers.greaterThanOrEqualTo(50));
+        }
+        assertThat(singleConnection.getResponseCode(), Matchers.equalTo(200));
+        assertThat(singleConnection.getHeaderField("Content-Encoding"), Matchers.nullValue());
+        try (InputStream inputStream = singleConnection.getInputStream()) {
+            assertThat(objectMapper.readValue(inputStream, MachineTO.class).getName(), Matchers.equalTo("testMachine0"));
+        }
+        assertThat(varyOf(allConnection), Matchers.containsInAnyOrder("accept", "accept-encoding"));
+        assertThat(varyOf(singleConnection), Matchers.contains("accept"));
+    }
+
+    private static List<String> varyOf(HttpURLConnection connection) {
+        return connection.getHeaderFields().getOrDefault("Vary", Collections.emptyList()).stream()
+                .flatMap(vary -> Arrays.stream(vary.split(",")))
+                .map(field -> field.trim().toLowerCase())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * - Given: a client with a full rate limit bucket.
+     * - When: the client fetches a single machine and then all machines over HTTP.
+     * - Then: the responses should contain the remaining tokens of the client, taking the cost of fetching all
+     * machines into account, which is only slightly offset by the tokens refilled in the meantime.
+     */
+    @Test
+    void shouldChargeRateLimitOfClientByCostOfOperation() throws Exception {
+        HttpURLConnection singleConnection = openGzipConnection("/api/machine/testId");
+        singleConnection.setRequestProperty("X-Api-Key", "testKey5");
+        HttpURLConnection allConnection = openGzipConnection("/api/machine/all");
+        allConnection.setRequestProperty("X-Api-Key", "testKey5");
+
+        assertThat(singleConnection.getResponseCode(), Matchers.equalTo(404));
+        assertThat(singleConnection.getHeaderField("RateLimit-Limit"), Matchers.equalTo("100"));
+        assertThat(singleConnection.getHeaderField("RateLimit-Remaining"), Matchers.equalTo("99"));
+        assertThat(allConnection.getResponseCode(), Matchers.equalTo(200));
+        assertThat(Integer.parseInt(allConnection.getHeaderField("RateLimit-Remaining")),
+                Matchers.both(Matchers.greaterThanOrEqualTo(79)).and(Matchers.lessThan(90)));
+    }
+
+    private HttpURLConnection openGzipConnection(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + this.port + path).openConnection();
+        connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        return connection;
+    }
+
     /**
      * - Given: there are no machines stored in the database.
      * - When: a request with a valid ID path variable is sent to the API endpoint which is responsible for
@@ -114,7 +285,7 @@ class MachineControllerTest {
      */
     @Test
     void shouldFailToFetchSingleMachineIfMachineWithProvidedIdDoesNotExist() throws Exception {
-        MvcResult mvcResult = mockMvc.perform(get("/api/machine/testId").characterEncoding("utf-8"))
+        MvcResult mvcResult = perform(get("/api/machine/testId").characterEncoding("utf-8"))
                 .andExpect(status().isNotFound())
                 .andReturn();
         String contentAsString = mvcResult.getResponse().getContentAsString();
@@ -138,7 +309,7 @@ class MachineControllerTest {
         createMachineRequest.setDescription("test description");
         createMachineRequest.setYearOfProduction(2012);
 
-        MvcResult mvcResult = mockMvc.perform(post("/api/machine/")
+        MvcResult mvcResult = perform(post("/api/machine/")
                 .content(objectMapper.writeValueAsString(createMachineRequest))
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isCreated())
@@ -168,7 +339,7 @@ class MachineControllerTest {
         createMachineRequest.setDescription("test description");
         createMachineRequest.setYearOfProduction(2012);
 
-        MvcResult mvcResult = mockMvc.perform(post("/api/machine/")
+        MvcResult mvcResult = perform(post("/api/machine/")
                 .content(objectMapper.writeValueAsString(createMachineRequest))
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest())
@@ -194,7 +365,7 @@ class MachineControllerTest {
         createMachineRequest.setDescription("test description");
         createMachineRequest.setYearOfProduction(3003);
 
-        MvcResult mvcResult = mockMvc.perform(post("/api/machine/")
+        MvcResult mvcResult = perform(post("/api/machine/")
                 .content(objectMapper.writeValueAsString(createMachineRequest))
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest())
@@ -224,7 +395,7 @@ class MachineControllerTest {
         machineToUpdate.setYearOfProduction(2013);
         machineToUpdate.setDescription("updatedDescription");
 
-        MvcResult mvcResult = mockMvc.perform(put("/api/machine/")
+        MvcResult mvcResult = perform(put("/api/machine/")
                 .content(objectMapper.writeValueAsString(machineToUpdate))
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
@@ -255,7 +426,7 @@ class MachineControllerTest {
         machineToUpdate.setId("notExistingId");
         machineToUpdate.setName("updatedName");
 
-        MvcResult mvcResult = mockMvc.perform(put("/api/machine/")
+        MvcResult mvcResult = perform(put("/api/machine/")
                 .content(objectMapper.writeValueAsString(machineToUpdate))
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNotFound())
@@ -281,7 +452,7 @@ class MachineControllerTest {
         machineToUpdate.setDescription("test description");
         machineToUpdate.setYearOfProduction(2013);
 
-        MvcResult mvcResult = mockMvc.perform(put("/api/machine/")
+        MvcResult mvcResult = perform(put("/api/machine/")
                 .content(objectMapper.writeValueAsString(machineToUpdate))
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest())
@@ -306,12 +477,12 @@ class MachineControllerTest {
         Machine machine1 = new Machine("testMachine1", "this is a test machine", 1999);
         Machine savedMachine = this.machineRepository.save(machine1);
 
-        mockMvc.perform(delete("/api/machine/" + savedMachine.getId())).andExpect(status().isOk()).andReturn();
+        perform(delete("/api/machine/" + savedMachine.getId())).andExpect(status().isOk()).andReturn();
 
         Machine deletedMachine = machineRepository.findById(savedMachine.getId()).get();
         assertThat(deletedMachine.isDeleted(), Matchers.equalTo(true));
 
-        MvcResult mvcResult = mockMvc.perform(get("/api/machine/" + savedMachine.getId()).characterEncoding("utf-8")).andExpect(status().isNotFound()).andReturn();
+        MvcResult mvcResult = perform(get("/api/machine/" + savedMachine.getId()).characterEncoding("utf-8")).andExpect(status().isNotFound()).andReturn();
     }
 
     /**
@@ -323,7 +494,7 @@ class MachineControllerTest {
      */
     @Test
     void shouldFailToDeleteMachineIfThereIsNoMachineMatchingTheProvidedId() throws Exception {
-        MvcResult mvcResult = mockMvc.perform(delete("/api/machine/notExistingId")).andExpect(status().isNotFound()).andReturn();
+        MvcResult mvcResult = perform(delete("/api/machine/notExistingId")).andExpect(status().isNotFound()).andReturn();
         String contentAsString = mvcResult.getResponse().getContentAsString();
         ErrorResponse errorResponse = objectMapper.readValue(contentAsString, ErrorResponse.class);
 
@@ -332,6 +503,739 @@ class MachineControllerTest {
         assertThat(errorResponse.getTimestamp(), Matchers.notNullValue());
     }
 
+    /**
+     * - Given: there are machines stored in the database.
+     * - When: requests are sent to the paged fetch API endpoint, each with the cursor returned by the previous page.
+     * - Then: every stored machine is returned exactly once, in the same order as by the endpoint
+     * fetching all machines.
+     */
+    @Test
+    void shouldFetchAllStoredMachinesPageByPage() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            this.machineRepository.save(new Machine("testMachine" + i, "this is a test machine", 1999));
+        }
+        MvcResult allResult = perform(get("/api/machine/all")).andExpect(status().isOk()).andReturn();
+        List<String> expectedIds = Arrays.stream(objectMapper.readValue(allResult.getResponse().getContentAsString(), MachineTO[].class))
+                .map(MachineTO::getId)
+                .collect(Collectors.toList());
+
+        List<String> pagedIds = new ArrayList<>();
+        String cursor = null;
+        do {
+            MvcResult mvcResult = perform(cursor == null
+                    ? get("/api/machine").param("limit", "2")
+                    : get("/api/machine").param("limit", "2").param("cursor", cursor))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            MachinePage page = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), MachinePage.class);
+            assertTrue(page.getItems().size() <= 2);
+            page.getItems().forEach(machineTO -> pagedIds.add(machineTO.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertThat(pagedIds, Matchers.equalTo(expectedIds));
+    }
+
+    /**
+     * - Given: a cursor which was not issued by the application.
+     * - When: a request with the cursor is sent to the paged fetch API endpoint.
+     * - Then: an HTTP 400 error is being sent to the client.
+     */
+    @Test
+    void shouldFailToFetchPageIfCursorIsInvalid() throws Exception {
+        MvcResult mvcResult = perform(get("/api/machine").param("cursor", "notACursor"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+        ErrorResponse errorResponse = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), ErrorResponse.class);
+
+        assertThat(errorResponse.getMessage(), Matchers.equalTo("Cursor [notACursor] is invalid!"));
+        assertThat(errorResponse.getStatus(), Matchers.equalTo(400));
+    }
+
+    /**
+     * - Given: there are machines stored in the database.
+     * - When: a request with a page size over the allowed maximum is sent to the paged fetch API endpoint.
+     * - Then: an HTTP 400 error is being sent to the client.
+     */
+    @Test
+    void shouldFailToFetchPageIfLimitIsOutOfRange() throws Exception {
+        perform(get("/api/machine").param("limit", "501")).andExpect(status().isBadRequest());
+    }
+
+    /**
+     * - Given: there are machines stored in the database.
+     * - When: a request is sent to the API endpoint which is responsible for exporting all machines.
+     * - Then: every stored machine is written to the response as a separate line of JSON.
+     */
+    @Test
+    void shouldExportStoredMachinesAsNewlineDelimitedJson() throws Exception {
+        Machine savedMachine1 = this.machineRepository.save(new Machine("testMachine1", "this is a test machine", 1999));
+        Machine savedMachine2 = this.machineRepository.save(new Machine("testMachine2", "this is a test machine", 2005));
+        MvcResult allResult = perform(get("/api/machine/all")).andExpect(status().isOk()).andReturn();
+        MachineTO[] allMachines = objectMapper.readValue(allResult.getResponse().getContentAsString(), MachineTO[].class);
+
+        MvcResult mvcResult = perform(get("/api/machine/export"))
+                .andExpect(status().isOk())
+                .andReturn();
+        String content = mvcResult.getResponse().getContentAsString();
+
+        assertThat(mvcResult.getResponse().getContentType(), Matchers.startsWith("application/x-ndjson"));
+        assertTrue(content.endsWith("\n"));
+        String[] lines = content.split("\n");
+        assertThat(lines.length, Matchers.equalTo(allMachines.length));
+        List<String> exportedIds = new ArrayList<>();
+        for (String line : lines) {
+            exportedIds.add(objectMapper.readValue(line, MachineTO.class).getId());
+        }
+        assertThat(exportedIds, Matchers.hasItems(savedMachine1.getId(), savedMachine2.getId()));
+    }
+
+    /**
+     * - Given: there are machines stored in the database, one of them changed and one of them deleted
+     * after a watermark.
+     * - When: a request is sent to the API endpoint which is responsible for fetching changes since the watermark.
+     * - Then: the changed machine is returned, the deleted one as a tombstone, and the unchanged one is left out.
+     */
+    @Test
+    void shouldFetchChangesAndTombstonesSinceWatermark() throws Exception {
+        LocalDateTime watermarkTime = LocalDateTime.now().minusHours(2);
+        Machine unchangedMachine = this.machineRepository.save(new Machine("testMachine1", "this is a test machine", 1999));
+        Machine changedMachine = this.machineRepository.save(new Machine("testMachine2", "this is a test machine", 2005));
+        Machine deletedMachine = this.machineRepository.save(new Machine("testMachine3", "this is a test machine", 2010));
+        new TransactionTemplate(this.transactionManager).executeWithoutResult(status -> {
+            this.machineRepository.updateByIds(Collections.singleton(unchangedMachine.getId()), null, null, null,
+                    watermarkTime.minusHours(1));
+            this.machineRepository.updateByIds(Collections.singleton(changedMachine.getId()), "changedMachine", null, null,
+                    watermarkTime.plusMinutes(1));
+            this.machineRepository.softDeleteByIds(Collections.singleton(deletedMachine.getId()),
+                    watermarkTime.plusMinutes(2));
+        });
+        String since = new MachineCursor(watermarkTime, NIL_ID).encode();
+
+        MvcResult mvcResult = perform(get("/api/machine/changes").param("since", since))
+                .andExpect(status().isOk())
+                .andReturn();
+        MachineChanges changes = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), MachineChanges.class);
+
+        assertThat(changes.getItems().size(), Matchers.equalTo(1));
+        assertThat(changes.getItems().get(0).getId(), Matchers.equalTo(changedMachine.getId()));
+        assertThat(changes.getItems().get(0).getName(), Matchers.equalTo("changedMachine"));
+        assertThat(changes.getDeletedIds(), Matchers.contains(deletedMachine.getId()));
+        assertThat(changes.isHasMore(), Matchers.equalTo(false));
+        assertThat(changes.getWatermark(),
+                Matchers.equalTo(new MachineCursor(watermarkTime.plusMinutes(2), deletedMachine.getId()).encode()));
+    }
+
+    /**
+     * - Given: the application is running.
+     * - When: a request is sent to the API endpoint which is responsible for fetching changes
+     * with a watermark which can not be decoded.
+     * - Then: an HTTP 400 error is being sent to the client.
+     */
+    @Test
+    void shouldFailToFetchChangesIfWatermarkIsInvalid() throws Exception {
+        perform(get("/api/machine/changes").param("since", "notAWatermark")).andExpect(status().isBadRequest());
+    }
+
+    /**
+     * - Given: there are no machines stored in the database.
+     * - When: a request is sent to the API endpoint which is responsible for fetching a single machine.
+     * - Then: the repository query and the returned error are recorded as metrics and published in Prometheus format.
+     */
+    @Test
+    void shouldRecordMetricsOfRepositoryQueriesAndErrors() throws Exception {
+        double errorsBefore = errorCount("MachineDoesNotExistException");
+        long queriesBefore = repositoryInvocationCount("findProjectedById");
+
+        perform(get("/api/machine/01733e5a-2a20-7000-8000-0000000000ff")).andExpect(status().isNotFound());
+
+        assertThat(errorCount("MachineDoesNotExistException"), Matchers.equalTo(errorsBefore + 1));
+        assertThat(repositoryInvocationCount("findProjectedById"), Matchers.equalTo(queriesBefore + 1));
+        String prometheus = perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(prometheus, Matchers.containsString("machinist_repository_invocations_seconds_count{exception=\"none\",method=\"findProjectedById\",}"));
+        assertThat(prometheus, Matchers.containsString("machinist_repository_invocations_seconds_bucket"));
+        assertThat(prometheus, Matchers.containsString("cache_gets_total{cache=\"machine\""));
+    }
+
+    private double errorCount(String exception) {
+        Counter counter = this.meterRegistry.find("machinist.errors").tag("exception", exception).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private long repositoryInvocationCount(String method) {
+        Timer timer = this.meterRegistry.find("machinist.repository.invocations")
+                .tags("method", method, "exception", "none").timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    /**
+     * - Given: there are machines stored in the database.
+     * - When: requests are sent to the API endpoints which are responsible for fetching all machines and pages of
+     * machines, selecting the id and name fields.
+     * - Then: only the id and name of the machines are served in the responses, and the cursor of the page
+     * leads to the next page.
+     */
+    @Test
+    void shouldFetchOnlySelectedFieldsOfMachines() throws Exception {
+        this.machineRepository.save(new Machine("testMachine1", "this is a test machine", 1999));
+        this.machineRepository.save(new Machine("testMachine2", "this is a test machine as well", 2005));
+
+        MvcResult allResult = perform(get("/api/machine/all").param("fields", "id,name"))
+                .andExpect(status().isOk())
+                .andReturn();
+        MvcResult firstPageResult = perform(get("/api/machine").param("fields", "name").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andReturn();
+        MachinePage firstPage = objectMapper.readValue(firstPageResult.getResponse().getContentAsString(), MachinePage.class);
+        MvcResult secondPageResult = perform(get("/api/machine").param("fields", "name").param("limit", "1")
+                .param("cursor", firstPage.getNextCursor()))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        JsonNode allMachines = objectMapper.readTree(allResult.getResponse().getContentAsString());
+        assertThat(allMachines.size(), Matchers.greaterThanOrEqualTo(2));
+        for (JsonNode machine : allMachines) {
+            assertThat(Lists.newArrayList(machine.fieldNames()), Matchers.contains("id", "name"));
+        }
+        JsonNode firstPageItem = objectMapper.readTree(firstPageResult.getResponse().getContentAsString()).get("items").get(0);
+        JsonNode secondPageItem = objectMapper.readTree(secondPageResult.getResponse().getContentAsString()).get("items").get(0);
+        assertThat(Lists.newArrayList(firstPageItem.fieldNames()), Matchers.contains("name"));
+        assertThat(secondPageItem.get("name").asText(), Matchers.not(firstPageItem.get("name").asText()));
+    }
+
+    /**
+     * - Given: there is a machine stored in the database.
+     * - When: a request is sent to the API endpoint which is responsible for fetching a single machine,
+     * selecting the name and description fields.
+     * - Then: only the name and the description of the machine are served in the response.
+     */
+    @Test
+    void shouldFetchOnlySelectedFieldsOfMachine() throws Exception {
+        Machine savedMachine = this.machineRepository.save(new Machine("testMachine", null, 1999));
+
+        MvcResult mvcResult = perform(get("/api/machine/" + savedMachine.getId()).param("fields", "name,description"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(mvcResult.getResponse().getContentAsString(),
+                Matchers.equalTo("{\"name\":\"testMachine\",\"description\":null}"));
+    }
+
+    /**
+     * - Given: the application is running.
+     * - When: a request is sent to the API endpoint which is responsible for fetching all machines,
+     * selecting a field which machines do not have.
+     * - Then: an HTTP 400 error is being sent to the client.
+     */
+    @Test
+    void shouldFailToFetchMachinesIfFieldIsUnknown() throws Exception {
+        MvcResult mvcResult = perform(get("/api/machine/all").param("fields", "id,price"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+
+        ErrorResponse errorResponse = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), ErrorResponse.class);
+        assertThat(errorResponse.getMessage(), Matchers.containsString("[price]"));
+    }
+
+    /**
+     * - Given: a machine was created with an idempotency key.
+     * - When: the request is retried with the same key, and a different request is sent with the same key.
+     * - Then: the retry returns the location of the machine which was already created without creating another one,
+     * and the different request is rejected with HTTP 422.
+     */
+    @Test
+    void shouldCreateMachineOnlyOnceWithIdempotencyKey() throws Exception {
+        CreateMachineRequest createMachineRequest = new CreateMachineRequest();
+        createMachineRequest.setName("idempotentMachine1");
+        createMachineRequest.setYearOfProduction(1999);
+        String content = objectMapper.writeValueAsString(createMachineRequest);
+
+        MvcResult firstResult = perform(post("/api/machine").content(content).contentType(MediaType.APPLICATION_JSON)
+                .header("Idempotency-Key", "testKey1"))
+                .andExpect(status().isCreated())
+                .andReturn();
+        MvcResult retryResult = perform(post("/api/machine").content(content).contentType(MediaType.APPLICATION_JSON)
+                .header("Idempotency-Key", "testKey1"))
+                .andExpect(status().isCreated())
+                .andReturn();
+        createMachineRequest.setYearOfProduction(2000);
+        MvcResult differentResult = perform(post("/api/machine")
+                .content(objectMapper.writeValueAsString(createMachineRequest))
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Idempotency-Key", "testKey1"))
+                .andExpect(status().isUnprocessableEntity())
+                .andReturn();
+
+        assertThat(retryResult.getResponse().getHeader("Location"),
+                Matchers.equalTo(firstResult.getResponse().getHeader("Location")));
+        assertThat(countMachinesNamed("idempotentMachine1"), Matchers.equalTo(1L));
+        ErrorResponse errorResponse = objectMapper.readValue(differentResult.getResponse().getContentAsString(), ErrorResponse.class);
+        assertThat(errorResponse.getMessage(), Matchers.containsString("[testKey1]"));
+    }
+
+    /**
+     * - Given: the application is running.
+     * - When: the same request with the same idempotency key is sent by several clients at the same time.
+     * - Then: every client receives the location of the same machine and only one machine is created.
+     */
+    @Test
+    void shouldCreateMachineOnlyOnceForConcurrentRequestsWithIdempotencyKey() throws Exception {
+        CreateMachineRequest createMachineRequest = new CreateMachineRequest();
+        createMachineRequest.setName("idempotentMachine2");
+        byte[] content = objectMapper.writeValueAsBytes(createMachineRequest);
+        int clients = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> locations = new ArrayList<>();
+        try {
+            for (int i = 0; i < clients; i++) {
+                locations.add(executor.submit(() -> {
+                    start.await();
+                    HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + this.port + "/api/machine")
+                            .openConnection();
+                    connection.setRequestMethod("POST");
+                    connection.setDoOutput(true);
+                    connection.setRequestProperty("Content-Type", "application/json");
+                    connection.setRequestProperty("Idempotency-Key", "testKey2");
+                    connection.getOutputStream().write(content);
+                    assertThat(connection.getResponseCode(), Matchers.equalTo(201));
+                    return connection.getHeaderField("Location");
+                }));
+            }
+            start.countDown();
+            Set<String> distinctLocations = new HashSet<>();
+            for (Future<String> location : locations) {
+                distinctLocations.add(location.get(10, TimeUnit.SECONDS));
+            }
+
+            assertThat(distinctLocations.size(), Matchers.equalTo(1));
+            assertThat(countMachinesNamed("idempotentMachine2"), Matchers.equalTo(1L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long countMachinesNamed(String name) {
+        return StreamSupport.stream(this.machineRepository.findAll().spliterator(), false)
+                .filter(machine -> machine.getName().equals(name))
+                .count();
+    }
+
+    /**
+     * - Given: a machine was created, updated and deleted through the API.
+     * - When: requests are sent to the API endpoints which are responsible for fetching the history of the machine
+     * and the machines as of the times of its revisions.
+     * - Then: every revision is returned with the fields it changed, and the machines as of each revision contain
+     * the machine in the state it had then, until it was deleted.
+     */
+    @Test
+    void shouldFetchHistoryOfMachineAndMachinesAsOfItsRevisions() throws Exception {
+        CreateMachineRequest createMachineRequest = new CreateMachineRequest();
+        createMachineRequest.setName("testMachine1");
+        createMachineRequest.setDescription("this is a test machine");
+        createMachineRequest.setYearOfProduction(1999);
+        MvcResult createResult = perform(post("/api/machine")
+                .content(objectMapper.writeValueAsString(createMachineRequest))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated())
+                .andReturn();
+        String machineId = createResult.getResponse().getHeader("Location").replace("/api/machine/", "");
+        MachineTO machineToUpdate = this.machineRepository.findById(machineId).get().toDTO();
+        machineToUpdate.setName("updatedName");
+        perform(put("/api/machine/")
+                .content(objectMapper.writeValueAsString(machineToUpdate))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        perform(delete("/api/machine/" + machineId)).andExpect(status().isOk());
+
+        MvcResult historyResult = perform(get("/api/machine/" + machineId + "/history"))
+                .andExpect(status().isOk())
+                .andReturn();
+        MachineRevisionTO[] revisions = objectMapper.readValue(historyResult.getResponse().getContentAsString(),
+                MachineRevisionTO[].class);
+        assertThat(Arrays.stream(revisions).map(MachineRevisionTO::getRevision).collect(Collectors.toList()),
+                Matchers.contains(0L, 1L, 2L));
+        assertThat(revisions[0].getChangeType(), Matchers.equalTo(MachineRevisionTO.ChangeTypeEnum.CREATED));
+        assertThat(revisions[0].getChangedFields(), Matchers.contains("name", "description", "yearOfProduction"));
+        assertThat(revisions[1].getChangeType(), Matchers.equalTo(MachineRevisionTO.ChangeTypeEnum.UPDATED));
+        assertThat(revisions[1].getChangedFields(), Matchers.contains("name"));
+        assertThat(revisions[1].getName(), Matchers.equalTo("updatedName"));
+        assertThat(revisions[1].getDescription(), Matchers.nullValue());
+        assertThat(revisions[2].getChangeType(), Matchers.equalTo(MachineRevisionTO.ChangeTypeEnum.DELETED));
+
+        MachineTO createdMachine = fetchMachineAsOf(machineId, revisions[0].getChangedAt());
+        MachineTO updatedMachine = fetchMachineAsOf(machineId, revisions[1].getChangedAt());
+        MachineTO deletedMachine = fetchMachineAsOf(machineId, revisions[2].getChangedAt());
+        assertThat(createdMachine.getName(), Matchers.equalTo("testMachine1"));
+        assertThat(createdMachine.getVersion(), Matchers.equalTo(0L));
+        assertThat(updatedMachine.getName(), Matchers.equalTo("updatedName"));
+        assertThat(updatedMachine.getDescription(), Matchers.equalTo("this is a test machine"));
+        assertThat(updatedMachine.getYearOfProduction(), Matchers.equalTo(1999));
+        assertThat(updatedMachine.getVersion(), Matchers.equalTo(1L));
+        assertThat(deletedMachine, Matchers.nullValue());
+    }
+
+    private MachineTO fetchMachineAsOf(String machineId, LocalDateTime timestamp) throws Exception {
+        MvcResult mvcResult = perform(get("/api/machine/asof")
+                .param("timestamp", timestamp.toString())
+                .param("limit", "500"))
+                .andExpect(status().isOk())
+                .andReturn();
+        MachinePage page = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), MachinePage.class);
+        return page.getItems().stream().filter(machineTO -> machineTO.getId().equals(machineId)).findFirst().orElse(null);
+    }
+
+    /**
+     * - Given: the machines inserted before the revisions were introduced, one of which was updated after its
+     * creation.
+     * - When: requests with a limit of one machine are sent to the API endpoint which is responsible for fetching
+     * the machines as of a time between their creations, following the cursor of the first page.
+     * - Then: the machines created until then are returned one per page, ordered by last update, with their time of
+     * creation and the version of their last update until then.
+     */
+    @Test
+    void shouldFetchPagesOfMachinesAsOfTimeFromRevisionsOfInsertedMachines() throws Exception {
+        String timestamp = "2020-07-20T18:00:00";
+
+        MvcResult firstResult = perform(get("/api/machine/asof").param("timestamp", timestamp).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andReturn();
+        MachinePage firstPage = objectMapper.readValue(firstResult.getResponse().getContentAsString(), MachinePage.class);
+        MvcResult secondResult = perform(get("/api/machine/asof")
+                .param("timestamp", timestamp)
+                .param("limit", "1")
+                .param("cursor", firstPage.getNextCursor()))
+                .andExpect(status().isOk())
+                .andReturn();
+        MachinePage secondPage = objectMapper.readValue(secondResult.getResponse().getContentAsString(), MachinePage.class);
+
+        assertThat(firstPage.getItems().get(0).getName(), Matchers.equalTo("Drill press"));
+        assertThat(firstPage.getItems().get(0).getVersion(), Matchers.equalTo(0L));
+        assertThat(secondPage.getItems().get(0).getName(), Matchers.equalTo("Milling machine"));
+        assertThat(secondPage.getItems().get(0).getCreatedAt(),
+                Matchers.equalTo(LocalDateTime.of(2020, 7, 20, 15, 2, 0, 915_000_000)));
+        assertThat(secondPage.getItems().get(0).getUpdatedAt(),
+                Matchers.equalTo(LocalDateTime.of(2020, 7, 20, 15, 9, 3, 711_000_000)));
+        assertThat(secondPage.getItems().get(0).getVersion(), Matchers.equalTo(1L));
+        assertThat(secondPage.getNextCursor(), Matchers.nullValue());
+    }
+
+    /**
+     * - Given: the application is running.
+     * - When: requests are sent to the API endpoints which are responsible for fetching the history of a machine
+     * which does not exist and the machines as of an invalid timestamp.
+     * - Then: HTTP 404 and HTTP 400 errors are being sent to the client.
+     */
+    @Test
+    void shouldFailToFetchHistoryOfUnknownMachineOrMachinesAsOfInvalidTimestamp() throws Exception {
+        perform(get("/api/machine/testId/history")).andExpect(status().isNotFound());
+        perform(get("/api/machine/asof").param("timestamp", "yesterday")).andExpect(status().isBadRequest());
+    }
+
+    /**
+     * - Given: there is a machine which was deleted and archived after the watermark.
+     * - When: a request with the watermark is sent to the API endpoint which is responsible for fetching the changes
+     * of machines.
+     * - Then: an HTTP 410 error is being sent to the client, since the deletion is no longer in the changes.
+     */
+    @Test
+    void shouldFailToFetchChangesIfDeletionsAfterWatermarkWereArchived() throws Exception {
+        LocalDateTime watermarkTime = LocalDateTime.of(1999, 1, 1, 12, 0);
+        Machine deletedMachine = this.machineRepository.save(new Machine("testMachine1", "this is a test machine", 1999));
+        new TransactionTemplate(this.transactionManager).executeWithoutResult(status ->
+                this.machineRepository.softDeleteById(deletedMachine.getId(), watermarkTime.plusDays(1)));
+        this.machineArchiver.archiveDeletedMachines();
+
+        MvcResult mvcResult = perform(get("/api/machine/changes")
+                .param("since", new MachineCursor(watermarkTime, NIL_ID).encode()))
+                .andExpect(status().isGone())
+                .andReturn();
+
+        ErrorResponse errorResponse = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), ErrorResponse.class);
+        assertThat(errorResponse.getStatus(), Matchers.equalTo(410));
+    }
+
+    /**
+     * - Given: there is a machine stored in the database and a client is subscribed to the changes of machines.
+     * - When: the machine is deleted through the API.
+     * - Then: the deletion is sent to the subscribed client as a server-sent event once it is committed.
+     */
+    @Test
+    void shouldSendCommittedChangesToSubscribedClients() throws Exception {
+        Machine savedMachine = this.machineRepository.save(new Machine("testMachine", "this is a test machine", 1999));
+        MvcResult mvcResult = mockMvc.perform(get("/api/machine/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        perform(delete("/api/machine/" + savedMachine.getId())).andExpect(status().isOk());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!mvcResult.getResponse().getContentAsString().contains(savedMachine.getId())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        String content = mvcResult.getResponse().getContentAsString();
+        assertThat(mvcResult.getResponse().getContentType(), Matchers.startsWith(MediaType.TEXT_EVENT_STREAM_VALUE));
+        assertThat(content, Matchers.containsString("event:deleted"));
+        assertThat(content, Matchers.containsString("\"machineIds\":[\"" + savedMachine.getId() + "\"]"));
+    }
+
+    /**
+     * - Given: there are no machines stored in the database.
+     * - When: a batch creation request with valid and invalid items is being sent to the API endpoint
+     * which is responsible for creating multiple machines in the application.
+     * - Then: the valid machines are created, the invalid ones are reported with their validation errors.
+     */
+    @Test
+    void shouldCreateValidMachinesOfBatchAndReportInvalidOnes() throws Exception {
+        CreateMachineRequest validRequest = new CreateMachineRequest();
+        validRequest.setName("test machine");
+        validRequest.setYearOfProduction(2012);
+        CreateMachineRequest invalidRequest = new CreateMachineRequest();
+        invalidRequest.setName("test machine");
+        invalidRequest.setYearOfProduction(3003);
+        CreateMachineRequest otherValidRequest = new CreateMachineRequest();
+        otherValidRequest.setName("other test machine");
+
+        MvcResult mvcResult = perform(post("/api/machine/batch")
+                .content(objectMapper.writeValueAsString(Arrays.asList(validRequest, invalidRequest, otherValidRequest)))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        BatchCreateMachineResponse response = objectMapper.readValue(mvcResult.getResponse().getContentAsString(),
+                BatchCreateMachineResponse.class);
+
+        assertThat(response.getResults().size(), Matchers.equalTo(3));
+        BatchCreateMachineResult validResult = response.getResults().get(0);
+        assertThat(validResult.getIndex(), Matchers.equalTo(0));
+        assertTrue(validResult.isCreated());
+        assertThat(machineRepository.findById(validResult.getId()).get().getName(), Matchers.equalTo(validRequest.getName()));
+
+        BatchCreateMachineResult invalidResult = response.getResults().get(1);
+        assertThat(invalidResult.getIndex(), Matchers.equalTo(1));
+        assertThat(invalidResult.isCreated(), Matchers.equalTo(false));
+        assertThat(invalidResult.getId(), Matchers.nullValue());
+        assertThat(invalidResult.getErrors(), Matchers.contains("yearOfProduction: must be less than or equal to 2020"));
+
+        BatchCreateMachineResult otherValidResult = response.getResults().get(2);
+        assertTrue(otherValidResult.isCreated());
+        assertThat(machineRepository.findById(otherValidResult.getId()).get().getName(), Matchers.equalTo(otherValidRequest.getName()));
+    }
+
+    /**
+     * - Given: there are no machines stored in the database.
+     * - When: a batch creation request with more items than allowed is being sent to the API endpoint
+     * which is responsible for creating multiple machines in the application.
+     * - Then: no machines are created and an HTTP 400 error is being sent to the client.
+     */
+    @Test
+    void shouldFailToCreateMachinesIfBatchIsTooLarge() throws Exception {
+        List<CreateMachineRequest> requests = new ArrayList<>();
+        for (int i = 0; i <= MachineController.MAX_BATCH_SIZE; i++) {
+            CreateMachineRequest createMachineRequest = new CreateMachineRequest();
+            createMachineRequest.setName("test machine");
+            requests.add(createMachineRequest);
+        }
+
+        perform(post("/api/machine/batch")
+                .content(objectMapper.writeValueAsString(requests))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * - Given: there are machines stored in the database.
+     * - When: a bulk deletion request with the IDs of stored and not existing machines is sent to the API endpoint
+     * which is responsible for deleting multiple machines.
+     * - Then: the stored machines are deleted and the not existing IDs are reported as not found.
+     */
+    @Test
+    void shouldDeleteMultipleMachines() throws Exception {
+        Machine savedMachine1 = this.machineRepository.save(new Machine("testMachine1", "this is a test machine", 1999));
+        Machine savedMachine2 = this.machineRepository.save(new Machine("testMachine2", "this is a test machine", 2005));
+        BulkDeleteMachineRequest request = new BulkDeleteMachineRequest();
+        request.setIds(Arrays.asList(savedMachine1.getId(), "notExistingId", savedMachine2.getId()));
+
+        MvcResult mvcResult = perform(post("/api/machine/batch/delete")
+                .content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        BulkOperationResponse response = objectMapper.readValue(mvcResult.getResponse().getContentAsString(),
+                BulkOperationResponse.class);
+
+        assertThat(response.getMatchedIds(), Matchers.contains(savedMachine1.getId(), savedMachine2.getId()));
+        assertThat(response.getNotFoundIds(), Matchers.contains("notExistingId"));
+        Machine deletedMachine1 = machineRepository.findById(savedMachine1.getId()).get();
+        assertTrue(deletedMachine1.isDeleted());
+        assertTrue(deletedMachine1.getUpdatedAt().isAfter(savedMachine1.getUpdatedAt()));
+        assertTrue(machineRepository.findById(savedMachine2.getId()).get().isDeleted());
+    }
+
+    /**
+     * - Given: there are machines stored in the database.
+     * - When: a bulk update request with the IDs of the stored machines and a field to update is sent to
+     * the API endpoint which is responsible for updating multiple machines.
+     * - Then: the provided field is updated on all machines, the other fields are left unchanged.
+     */
+    @Test
+    void shouldUpdateMultipleMachines() throws Exception {
+        Machine savedMachine1 = this.machineRepository.save(new Machine("testMachine1", "this is a test machine", 1999));
+        Machine savedMachine2 = this.machineRepository.save(new Machine("testMachine2", "this is a test machine", 2005));
+        BulkUpdateMachineRequest request = new BulkUpdateMachineRequest();
+        request.setIds(Arrays.asList(savedMachine1.getId(), savedMachine2.getId()));
+        request.setYearOfProduction(2010);
+
+        MvcResult mvcResult = perform(patch("/api/machine/batch")
+                .content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        BulkOperationResponse response = objectMapper.readValue(mvcResult.getResponse().getContentAsString(),
+                BulkOperationResponse.class);
+
+        assertThat(response.getMatchedIds(), Matchers.contains(savedMachine1.getId(), savedMachine2.getId()));
+        assertThat(response.getNotFoundIds(), Matchers.empty());
+        Machine updatedMachine1 = machineRepository.findById(savedMachine1.getId()).get();
+        assertThat(updatedMachine1.getYearOfProduction(), Matchers.equalTo(2010));
+        assertThat(updatedMachine1.getName(), Matchers.equalTo(savedMachine1.getName()));
+        assertThat(updatedMachine1.getDescription(), Matchers.equalTo(savedMachine1.getDescription()));
+        assertTrue(updatedMachine1.getUpdatedAt().isAfter(savedMachine1.getUpdatedAt()));
+        assertThat(machineRepository.findById(savedMachine2.getId()).get().getYearOfProduction(), Matchers.equalTo(2010));
+    }
+
+    /**
+     * - Given: there are no machines stored in the database.
+     * - When: a bulk update request with an invalid field is sent to the API endpoint which is responsible for
+     * updating multiple machines.
+     * - Then: an HTTP 400 error is being sent to the client.
+     */
+    @Test
+    void shouldFailToUpdateMultipleMachinesIfFieldIsInvalid() throws Exception {
+        BulkUpdateMachineRequest request = new BulkUpdateMachineRequest();
+        request.setIds(Arrays.asList("testId"));
+        request.setYearOfProduction(3003);
+
+        perform(patch("/api/machine/batch")
+                .content(objectMapper.writeValueAsString(request))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * - Given: there is a machine stored in the database which was already fetched once.
+     * - When: the machine is updated through the API and fetched again.
+     * - Then: the updated fields of the machine are served in the response.
+     */
+    @Test
+    void shouldFetchUpdatedMachineAfterItWasFetchedBefore() throws Exception {
+        Machine savedMachine = this.machineRepository.save(new Machine("testMachine1", "this is a test machine", 1999));
+        perform(get("/api/machine/" + savedMachine.getId())).andExpect(status().isOk());
+
+        MachineTO machineToUpdate = savedMachine.toDTO();
+        machineToUpdate.setName("updatedName");
+        perform(put("/api/machine/")
+                .content(objectMapper.writeValueAsString(machineToUpdate))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        MvcResult mvcResult = perform(get("/api/machine/" + savedMachine.getId())).andExpect(status().isOk()).andReturn();
+        MachineTO machineTO = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), MachineTO.class);
+        assertThat(machineTO.getName(), Matchers.equalTo("updatedName"));
+    }
+
+    /**
+     * - Given: there is a machine stored in the database which was fetched with its ETag.
+     * - When: the machine is fetched again with the ETag in the If-None-Match header, before and after it was updated.
+     * - Then: HTTP 304 without body is returned before the update, and the updated machine with a new ETag after it.
+     */
+    @Test
+    void shouldReturnNotModifiedForSingleMachineUntilItChanges() throws Exception {
+        Machine savedMachine = this.machineRepository.save(new Machine("testMachine1", "this is a test machine", 1999));
+        MvcResult mvcResult = perform(get("/api/machine/" + savedMachine.getId())).andExpect(status().isOk()).andReturn();
+        String eTag = mvcResult.getResponse().getHeader("ETag");
+        assertThat(eTag, Matchers.equalTo("W/\"0\""));
+
+        MvcResult notModifiedResult = perform(get("/api/machine/" + savedMachine.getId()).header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andReturn();
+        assertThat(notModifiedResult.getResponse().getContentAsString(), Matchers.isEmptyString());
+        assertThat(notModifiedResult.getResponse().getHeader("ETag"), Matchers.equalTo(eTag));
+
+        MachineTO machineToUpdate = savedMachine.toDTO();
+        machineToUpdate.setName("updatedName");
+        perform(put("/api/machine/")
+                .content(objectMapper.writeValueAsString(machineToUpdate))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        MvcResult modifiedResult = perform(get("/api/machine/" + savedMachine.getId()).header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andReturn();
+        MachineTO machineTO = objectMapper.readValue(modifiedResult.getResponse().getContentAsString(), MachineTO.class);
+        assertThat(machineTO.getName(), Matchers.equalTo("updatedName"));
+        assertThat(modifiedResult.getResponse().getHeader("ETag"), Matchers.equalTo("W/\"" + machineTO.getVersion() + "\""));
+        assertThat(modifiedResult.getResponse().getHeader("ETag"), Matchers.not(Matchers.equalTo(eTag)));
+    }
+
+    /**
+     * - Given: there are machines stored in the database which were fetched with the ETag of the list.
+     * - When: the list is fetched again with the ETag in the If-None-Match header, before and after a machine
+     * was deleted.
+     * - Then: HTTP 304 without body is returned before the deletion, and the new list after it.
+     */
+    @Test
+    void shouldReturnNotModifiedForAllMachinesUntilAnyMachineChanges() throws Exception {
+        Machine savedMachine = this.machineRepository.save(new Machine("testMachine1", "this is a test machine", 1999));
+        MvcResult mvcResult = perform(get("/api/machine/all")).andExpect(status().isOk()).andReturn();
+        String eTag = mvcResult.getResponse().getHeader("ETag");
+        assertThat(eTag, Matchers.notNullValue());
+
+        perform(get("/api/machine/all").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+
+        perform(delete("/api/machine/" + savedMachine.getId())).andExpect(status().isOk());
+
+        MvcResult modifiedResult = perform(get("/api/machine/all").header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertThat(modifiedResult.getResponse().getHeader("ETag"), Matchers.not(Matchers.equalTo(eTag)));
+    }
+
+    /**
+     * - Given: there are machines stored in the database.
+     * - When: a request with a search text is sent to the API endpoint which is responsible for searching machines.
+     * - Then: only the machines containing every word of the text are returned, those matching by name first.
+     */
+    @Test
+    void shouldSearchMachinesByNameAndDescription() throws Exception {
+        Machine descriptionMatch = this.machineRepository.save(new Machine("testMachine1", "a drill for wood", 1999));
+        Machine nameMatch = this.machineRepository.save(new Machine("Wood drill", "this is a test machine", 1999));
+        this.machineRepository.save(new Machine("testMachine3", "a drill for metal", 1999));
+
+        MvcResult mvcResult = perform(get("/api/machine/search").param("q", "WOOD drill"))
+                .andExpect(status().isOk())
+                .andReturn();
+        MachineSearchPage page = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), MachineSearchPage.class);
+
+        List<String> ids = page.getItems().stream().map(MachineTO::getId).collect(Collectors.toList());
+        assertThat(ids, Matchers.contains(nameMatch.getId(), descriptionMatch.getId()));
+        assertThat(page.getNextPage(), Matchers.nullValue());
+    }
+
+    /**
+     * - Given: there are machines stored in the database.
+     * - When: a request with a blank search text is sent to the API endpoint which is responsible for
+     * searching machines.
+     * - Then: an HTTP 400 error is being sent to the client.
+     */
+    @Test
+    void shouldFailToSearchMachinesIfQueryIsBlank() throws Exception {
+        perform(get("/api/machine/search").param("q", " ")).andExpect(status().isBadRequest());
+    }
+
     @AfterEach
     void tearDown() {
         this.machineRepository.deleteAll();
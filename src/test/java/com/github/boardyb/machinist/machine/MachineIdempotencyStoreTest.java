@@ -0,0 +1,144 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.machinist.MachinistApplication;
+import com.github.boardyb.restmodel.CreateMachineRequest;
+import com.github.boardyb.restmodel.MachineTO;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = {
+        MachinistApplication.class,
+        MachineController.class,
+        MachineExportController.class,
+        IntegrationTestConfiguration.class
+})
+class MachineIdempotencyStoreTest {
+
+    @Autowired
+    private IdempotentCreationRepository idempotentCreationRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MachineService machineService;
+
+    /**
+     * - Given: a machine was created with an idempotency key on one instance of the application.
+     * - When: the request is retried with the same key on another instance, which did not cache the key.
+     * - Then: the retry returns the id of the machine which was already created, without creating another one.
+     */
+    @Test
+    void shouldReturnMachineCreatedWithKeyOnOtherInstance() {
+        MachineIdempotencyStore firstInstance = createStore();
+        MachineIdempotencyStore secondInstance = createStore();
+        CreateMachineRequest request = new CreateMachineRequest();
+        request.setName("testMachine1");
+        AtomicInteger creations = new AtomicInteger();
+
+        String firstId = firstInstance.createOnce("testKey3", request, () -> createMachine(request, creations));
+        String secondId = secondInstance.createOnce("testKey3", request, () -> createMachine(request, creations));
+
+        assertThat(secondId, Matchers.equalTo(firstId));
+        assertThat(creations.get(), Matchers.equalTo(1));
+    }
+
+    /**
+     * - Given: no machine was created with an idempotency key yet.
+     * - When: the request is sent three times with the same key to one instance of the application, while the
+     * machine of the first request is still being created.
+     * - Then: all requests return the id of the same machine, which is created once, and only that machine is stored.
+     */
+    @Test
+    void shouldCreateMachineOnceForConcurrentRequestsWithSameKey() throws Exception {
+        MachineIdempotencyStore store = createStore();
+        CreateMachineRequest request = new CreateMachineRequest();
+        request.setName("testMachine5");
+        AtomicInteger creations = new AtomicInteger();
+        CountDownLatch creationStarted = new CountDownLatch(1);
+        CountDownLatch creationReleased = new CountDownLatch(1);
+        Callable<String> createOnce = () -> store.createOnce("testKey5", request, () -> {
+            creationStarted.countDown();
+            await(creationReleased);
+            return createMachine(request, creations);
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<String> firstId = executor.submit(createOnce);
+            await(creationStarted);
+            Future<String> secondId = executor.submit(createOnce);
+            Future<String> thirdId = executor.submit(createOnce);
+            Thread.sleep(200);
+            creationReleased.countDown();
+
+            assertThat(secondId.get(10, TimeUnit.SECONDS), Matchers.equalTo(firstId.get(10, TimeUnit.SECONDS)));
+            assertThat(thirdId.get(10, TimeUnit.SECONDS), Matchers.equalTo(firstId.get(10, TimeUnit.SECONDS)));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(creations.get(), Matchers.equalTo(1));
+        Long storedMachines = this.entityManager
+                .createQuery("SELECT COUNT(m) FROM Machine m WHERE m.name = 'testMachine5'", Long.class)
+                .getSingleResult();
+        assertThat(storedMachines, Matchers.equalTo(1L));
+    }
+
+    /**
+     * - Given: there is a stored idempotency key.
+     * - When: the keys older than the time to live are purged, first with a long and then with no time to live.
+     * - Then: the key is only deleted by the second purge.
+     */
+    @Test
+    void shouldPurgeKeysOlderThanTimeToLive() throws InterruptedException {
+        CreateMachineRequest request = new CreateMachineRequest();
+        request.setName("testMachine2");
+        createStore().createOnce("testKey4", request, () -> this.machineService.createMachine(request));
+
+        new MachineIdempotencyStore(this.idempotentCreationRepository, this.entityManager, this.transactionManager,
+                100, Duration.ofHours(1)).purgeExpiredKeys();
+        assertThat(this.idempotentCreationRepository.existsById("testKey4"), Matchers.equalTo(true));
+        Thread.sleep(10);
+        new MachineIdempotencyStore(this.idempotentCreationRepository, this.entityManager, this.transactionManager,
+                100, Duration.ZERO).purgeExpiredKeys();
+        assertThat(this.idempotentCreationRepository.existsById("testKey4"), Matchers.equalTo(false));
+    }
+
+    private MachineIdempotencyStore createStore() {
+        return new MachineIdempotencyStore(this.idempotentCreationRepository, this.entityManager,
+                this.transactionManager, 100, Duration.ofHours(1));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("The latch was not counted down in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private MachineTO createMachine(CreateMachineRequest request, AtomicInteger creations) {
+        creations.incrementAndGet();
+        return this.machineService.createMachine(request);
+    }
+}
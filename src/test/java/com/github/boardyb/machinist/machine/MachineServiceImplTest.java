@@ -1,32 +1,79 @@
 package com.github.boardyb.machinist.machine;
 
+import com.github.boardyb.machinist.machine.event.MachineChangeType;
+import com.github.boardyb.machinist.machine.event.MachineChangedEvent;
+import com.github.boardyb.machinist.machine.exception.ExpiredWatermarkException;
+import com.github.boardyb.machinist.machine.exception.InvalidCursorException;
+import com.github.boardyb.machinist.machine.exception.InvalidPageLimitException;
+import com.github.boardyb.machinist.machine.exception.InvalidSearchQueryException;
 import com.github.boardyb.machinist.machine.exception.MachineDoesNotExistException;
+import com.github.boardyb.restmodel.BulkOperationResponse;
+import com.github.boardyb.restmodel.BulkUpdateMachineRequest;
 import com.github.boardyb.restmodel.CreateMachineRequest;
+import com.github.boardyb.restmodel.MachineChanges;
+import com.github.boardyb.restmodel.MachinePage;
+import com.github.boardyb.restmodel.MachineSearchPage;
 import com.github.boardyb.restmodel.MachineTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
-
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 class MachineServiceImplTest {
 
+    private static final String TEST_ID = "01733e5a-2a20-7000-8000-000000000000";
+
     private MachineService machineService;
     private MachineRepository machineRepository;
+    private EntityManager entityManager;
+    private MachineCache machineCache;
+    private MachineSearch machineSearch;
+    private ApplicationEventPublisher eventPublisher;
+    private MachineRevisionRepository machineRevisionRepository;
+    private MachineStatistics machineStatistics;
+    private MachineWriteHorizon machineWriteHorizon;
 
     @BeforeEach
     void setUp() {
         this.machineRepository = Mockito.mock(MachineRepository.class);
-        this.machineService = new MachineServiceImpl(this.machineRepository);
+        this.entityManager = Mockito.mock(EntityManager.class);
+        this.machineCache = new MachineCache(true, 100, Duration.ofMinutes(5), Duration.ofSeconds(5));
+        this.machineSearch = Mockito.mock(MachineSearch.class);
+        this.eventPublisher = Mockito.mock(ApplicationEventPublisher.class);
+        this.machineRevisionRepository = Mockito.mock(MachineRevisionRepository.class);
+        this.machineStatistics = Mockito.mock(MachineStatistics.class);
+        this.machineWriteHorizon = Mockito.mock(MachineWriteHorizon.class);
+        doReturn(Optional.empty()).when(this.machineWriteHorizon).findOldestRunningWriteStart();
+        this.machineService = new MachineServiceImpl(this.machineRepository, this.entityManager, this.machineCache,
+                this.machineSearch, this.eventPublisher, this.machineRevisionRepository, this.machineStatistics,
+                this.machineWriteHorizon, Duration.ofSeconds(5));
     }
 
     /**
@@ -46,7 +93,7 @@ class MachineServiceImplTest {
                 createMachineRequest.getDescription(),
                 createMachineRequest.getYearOfProduction()
         );
-        storedMachine.setId("testId");
+        storedMachine.setId(TEST_ID);
         doReturn(storedMachine).when(this.machineRepository).save(any(Machine.class));
 
         MachineTO machine = this.machineService.createMachine(createMachineRequest);
@@ -67,7 +114,7 @@ class MachineServiceImplTest {
         ArgumentCaptor<Machine> argumentCaptor = ArgumentCaptor.forClass(Machine.class);
 
         MachineTO machineTO = new MachineTO();
-        machineTO.setId("testId");
+        machineTO.setId(TEST_ID);
         machineTO.setName("test machine with new name");
         machineTO.setDescription("test machine with new description");
         machineTO.setYearOfProduction(2010);
@@ -76,7 +123,7 @@ class MachineServiceImplTest {
                 "test description",
                 1999
         );
-        storedMachine.setId("testId");
+        storedMachine.setId(TEST_ID);
         doReturn(Optional.of(storedMachine)).when(machineRepository).findByIdAndDeletedFalse(machineTO.getId());
 
         this.machineService.updateMachine(machineTO);
@@ -98,7 +145,7 @@ class MachineServiceImplTest {
     @Test
     void shouldFailToUpdateMachineIfThereWasNoMachineStoredWithTheSameId() {
         MachineTO machineTO = new MachineTO();
-        machineTO.setId("testId");
+        machineTO.setId(TEST_ID);
 
         doReturn(Optional.empty()).when(machineRepository).findByIdAndDeletedFalse(machineTO.getId());
 
@@ -112,14 +159,14 @@ class MachineServiceImplTest {
      */
     @Test
     void shouldGetMachineIfThereIsOneStoredWithTheSameId() {
-        String testId = "testId";
+        String testId = TEST_ID;
 
         Machine storedMachine = new Machine("test machine",
                 "test description",
                 1999
         );
         storedMachine.setId(testId);
-        doReturn(Optional.of(storedMachine)).when(machineRepository).findByIdAndDeletedFalse(testId);
+        doReturn(Optional.of(storedMachine.toDTO())).when(machineRepository).findProjectedById(testId);
 
         MachineTO machine = this.machineService.getMachineById(testId);
         assertThat(machine.getId(), equalTo(storedMachine.getId()));
@@ -135,9 +182,9 @@ class MachineServiceImplTest {
      */
     @Test
     void shouldFailToGetMachineIfThereWasNoMachineStoredWithTheSameId() {
-        String testId = "testId";
+        String testId = TEST_ID;
 
-        doReturn(Optional.empty()).when(machineRepository).findByIdAndDeletedFalse(testId);
+        doReturn(Optional.empty()).when(machineRepository).findProjectedById(testId);
 
         assertThrows(MachineDoesNotExistException.class, () -> this.machineService.getMachineById(testId));
     }
@@ -153,15 +200,15 @@ class MachineServiceImplTest {
                 "test description",
                 1999
         );
-        storedMachine.setId("testId");
+        storedMachine.setId(TEST_ID);
         Machine storedMachine1 = new Machine("test machine",
                 "test description",
                 1999
         );
-        storedMachine1.setId("testId1");
-        List<Machine> storedMachines = newArrayList(storedMachine, storedMachine1);
+        storedMachine1.setId(testId(1));
+        List<MachineTO> storedMachines = newArrayList(storedMachine.toDTO(), storedMachine1.toDTO());
 
-        doReturn(storedMachines).when(machineRepository).findAllByDeletedFalseOrderByUpdatedAtDesc();
+        doReturn(storedMachines).when(machineRepository).findAllProjectedByDeletedFalse();
 
         List<MachineTO> machines = this.machineService.getAllMachines();
         MachineTO machineTO = machines.get(0);
@@ -181,26 +228,21 @@ class MachineServiceImplTest {
     /**
      * - Given: there is a machine saved in the database.
      * - When: deleteMachineById is being called with a valid id to delete the stored machine.
-     * - Then: the machine's deleted field should be set to true and saved to the database.
+     * - Then: the machine's deleted field should be set to true in the database with a single update and
+     * the deletion should be published.
      */
     @Test
     void shouldDeleteStoredMachine() {
-        ArgumentCaptor<Machine> argumentCaptor = ArgumentCaptor.forClass(Machine.class);
-
-        String machineId = "testId";
-        Machine storedMachine = new Machine("test machine",
-                "test description",
-                1999
-        );
-        storedMachine.setId(machineId);
+        String machineId = TEST_ID;
 
-        doReturn(Optional.of(storedMachine)).when(machineRepository).findByIdAndDeletedFalse(machineId);
+        doReturn(1).when(machineRepository).softDeleteById(eq(machineId), any(LocalDateTime.class));
 
         this.machineService.deleteMachineById(machineId);
 
-        verify(machineRepository, times(1)).save(argumentCaptor.capture());
-
-        assertThat(argumentCaptor.getValue().isDeleted(), equalTo(true));
+        verify(machineRepository, times(1)).softDeleteById(eq(machineId), any(LocalDateTime.class));
+        verify(machineRepository, never()).findByIdAndDeletedFalse(machineId);
+        verify(eventPublisher, times(1)).publishEvent(
+                new MachineChangedEvent(MachineChangeType.DELETED, Collections.singleton(machineId)));
     }
 
     /**
@@ -210,10 +252,540 @@ class MachineServiceImplTest {
      */
     @Test
     void shouldFailToDeleteMachineIfThereWasNoMachineStoredWithTheSameId() {
-        String machineId = "testId";
+        String machineId = TEST_ID;
 
-        doReturn(Optional.empty()).when(machineRepository).findByIdAndDeletedFalse(machineId);
+        doReturn(0).when(machineRepository).softDeleteById(eq(machineId), any(LocalDateTime.class));
 
         assertThrows(MachineDoesNotExistException.class, () -> this.machineService.deleteMachineById(machineId));
     }
-}
\ No newline at end of file
+
+    /**
+     * - Given: there are more machines saved in the database than the requested page size.
+     * - When: getMachinePage is being called without a cursor.
+     * - Then: the first page should be returned with a cursor pointing to the last machine of the page.
+     */
+    @Test
+    void shouldFetchFirstPageWithNextCursorIfThereAreMoreMachines() {
+        Machine storedMachine = new Machine("test machine", "test description", 1999);
+        storedMachine.setId(TEST_ID);
+        Machine storedMachine1 = new Machine("test machine", "test description", 1999);
+        storedMachine1.setId(testId(1));
+
+        doReturn(newArrayList(storedMachine.toDTO(), storedMachine1.toDTO()))
+                .when(machineRepository).findFirstPage(PageRequest.of(0, 2));
+
+        MachinePage page = this.machineService.getMachinePage(null, 1);
+
+        assertThat(page.getItems().size(), equalTo(1));
+        assertThat(page.getItems().get(0).getId(), equalTo(storedMachine.getId()));
+        assertThat(page.getNextCursor(), equalTo(MachineCursor.of(storedMachine.toDTO()).encode()));
+    }
+
+    /**
+     * - Given: a cursor of a previous page is being provided and there are no more machines after the fetched page.
+     * - When: getMachinePage is being called with the cursor.
+     * - Then: the machines after the cursor should be returned without a next cursor.
+     */
+    @Test
+    void shouldFetchLastPageAfterProvidedCursor() {
+        MachineCursor cursor = new MachineCursor(LocalDateTime.of(2020, 7, 20, 15, 9, 3, 711000000), TEST_ID);
+        Machine storedMachine = new Machine("test machine", "test description", 1999);
+        storedMachine.setId(testId(1));
+
+        doReturn(newArrayList(storedMachine.toDTO()))
+                .when(machineRepository).findPageAfter(cursor.getUpdatedAt(), cursor.getId(), PageRequest.of(0, 3));
+
+        MachinePage page = this.machineService.getMachinePage(cursor.encode(), 2);
+
+        assertThat(page.getItems().size(), equalTo(1));
+        assertThat(page.getItems().get(0).getId(), equalTo(storedMachine.getId()));
+        assertThat(page.getNextCursor(), nullValue());
+    }
+
+    /**
+     * - Given: a cursor which was not issued by the application is being provided.
+     * - When: getMachinePage is being called with the cursor.
+     * - Then: the fetch should fail and {@link InvalidCursorException} should be thrown.
+     */
+    @Test
+    void shouldFailToFetchPageIfCursorIsInvalid() {
+        assertThrows(InvalidCursorException.class, () -> this.machineService.getMachinePage("notACursor", 10));
+    }
+
+    /**
+     * - Given: a page limit which is out of the allowed range.
+     * - When: getMachinePage is being called with the limit.
+     * - Then: the fetch should fail and {@link InvalidPageLimitException} should be thrown.
+     */
+    @Test
+    void shouldFailToFetchPageIfLimitIsOutOfRange() {
+        assertThrows(InvalidPageLimitException.class, () -> this.machineService.getMachinePage(null, 0));
+        assertThrows(InvalidPageLimitException.class,
+                () -> this.machineService.getMachinePage(null, MachineServiceImpl.MAX_PAGE_LIMIT + 1));
+    }
+
+    /**
+     * - Given: there are machines saved in the database.
+     * - When: exportMachines is being called with a consumer.
+     * - Then: every machine should be passed to the consumer as DTO and detached from the persistence context
+     * right after it was consumed.
+     */
+    @Test
+    void shouldExportAllStoredMachinesAndDetachThem() {
+        Machine storedMachine = new Machine("test machine", "test description", 1999);
+        storedMachine.setId(TEST_ID);
+        Machine storedMachine1 = new Machine("test machine", "test description", 1999);
+        storedMachine1.setId(testId(1));
+        doReturn(Stream.of(storedMachine, storedMachine1)).when(machineRepository).streamAllByDeletedFalse();
+
+        List<MachineTO> exported = new ArrayList<>();
+        this.machineService.exportMachines(exported::add);
+
+        assertThat(exported.size(), equalTo(2));
+        assertThat(exported.get(0).getId(), equalTo(storedMachine.getId()));
+        assertThat(exported.get(1).getId(), equalTo(storedMachine1.getId()));
+        verify(entityManager, times(1)).detach(storedMachine);
+        verify(entityManager, times(1)).detach(storedMachine1);
+    }
+
+    /**
+     * - Given: a list of valid CreateMachineRequests is being provided.
+     * - When: createMachines is being called with the list.
+     * - Then: all machines should be saved to the database at once and their DTOs should be returned in
+     * the order of the requests.
+     */
+    @Test
+    void shouldCreateAllMachinesOfBatch() {
+        CreateMachineRequest createMachineRequest = new CreateMachineRequest();
+        createMachineRequest.setName("test machine");
+        CreateMachineRequest createMachineRequest1 = new CreateMachineRequest();
+        createMachineRequest1.setName("test machine 1");
+        doAnswer(invocation -> {
+            List<Machine> machines = invocation.getArgument(0);
+            for (int i = 0; i < machines.size(); i++) {
+                machines.get(i).setId(testId(i));
+            }
+            return machines;
+        }).when(machineRepository).saveAll(anyList());
+
+        List<MachineTO> machines = this.machineService.createMachines(newArrayList(createMachineRequest, createMachineRequest1));
+
+        verify(machineRepository, times(1)).saveAll(anyList());
+        assertThat(machines.size(), equalTo(2));
+        assertThat(machines.get(0).getId(), equalTo(testId(0)));
+        assertThat(machines.get(0).getName(), equalTo(createMachineRequest.getName()));
+        assertThat(machines.get(1).getId(), equalTo(testId(1)));
+        assertThat(machines.get(1).getName(), equalTo(createMachineRequest1.getName()));
+    }
+
+    /**
+     * - Given: there are machines saved in the database with some of the provided ids.
+     * - When: deleteMachines is being called with the ids.
+     * - Then: the matching machines should be deleted with a single update, and the ids which do not match
+     * any machines should be reported as not found.
+     */
+    @Test
+    void shouldDeleteMatchingMachinesAndReportMissingOnes() {
+        List<String> ids = newArrayList(TEST_ID, "missingId", testId(1), TEST_ID);
+        doReturn(newArrayList(TEST_ID, testId(1))).when(machineRepository).lockLiveIds(anyCollection());
+
+        BulkOperationResponse response = this.machineService.deleteMachines(ids);
+
+        verify(machineRepository, times(1)).softDeleteByIds(eq(newArrayList(TEST_ID, testId(1))), any(LocalDateTime.class));
+        assertThat(response.getMatchedIds(), equalTo(newArrayList(TEST_ID, testId(1))));
+        assertThat(response.getNotFoundIds(), equalTo(newArrayList("missingId")));
+    }
+
+    /**
+     * - Given: there are machines saved in the database with some of the provided ids.
+     * - When: updateMachines is being called with the ids and the fields to update.
+     * - Then: the matching machines should be updated with a single update and their update should be published,
+     * and the ids which do not match any machines should be reported as not found.
+     */
+    @Test
+    void shouldUpdateMatchingMachinesAndReportMissingOnes() {
+        BulkUpdateMachineRequest request = new BulkUpdateMachineRequest();
+        request.setIds(newArrayList(TEST_ID, "missingId"));
+        request.setYearOfProduction(2010);
+        doReturn(newArrayList(TEST_ID)).when(machineRepository).lockLiveIds(anyCollection());
+
+        BulkOperationResponse response = this.machineService.updateMachines(request);
+
+        verify(machineRepository, times(1)).updateByIds(eq(newArrayList(TEST_ID)), isNull(), isNull(),
+                eq(2010), any(LocalDateTime.class));
+        verify(eventPublisher, times(1)).publishEvent(
+                new MachineChangedEvent(MachineChangeType.UPDATED, newArrayList(TEST_ID)));
+        assertThat(response.getMatchedIds(), equalTo(newArrayList(TEST_ID)));
+        assertThat(response.getNotFoundIds(), equalTo(newArrayList("missingId")));
+    }
+
+    /**
+     * - Given: there are no machines saved in the database with the provided ids.
+     * - When: deleteMachines is being called with the ids.
+     * - Then: no update should be executed and every id should be reported as not found.
+     */
+    @Test
+    void shouldNotDeleteAnythingIfNoMachinesMatch() {
+        doReturn(newArrayList()).when(machineRepository).lockLiveIds(anyCollection());
+
+        BulkOperationResponse response = this.machineService.deleteMachines(newArrayList("missingId"));
+
+        verify(machineRepository, never()).softDeleteByIds(anyCollection(), any(LocalDateTime.class));
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+        assertThat(response.getMatchedIds().size(), equalTo(0));
+        assertThat(response.getNotFoundIds(), equalTo(newArrayList("missingId")));
+    }
+
+    /**
+     * - Given: there is a machine stored with an ID which matches the provided one.
+     * - When: getMachineById is being called multiple times with the ID.
+     * - Then: the machine should be fetched from the database only once and served from the cache afterwards.
+     */
+    @Test
+    void shouldServeRepeatedLookupsOfMachineFromCache() {
+        Machine storedMachine = new Machine("test machine", "test description", 1999);
+        storedMachine.setId(TEST_ID);
+        doReturn(Optional.of(storedMachine.toDTO())).when(machineRepository).findProjectedById(TEST_ID);
+
+        this.machineService.getMachineById(TEST_ID);
+        MachineTO machine = this.machineService.getMachineById(TEST_ID);
+
+        assertThat(machine.getName(), equalTo(storedMachine.getName()));
+        verify(machineRepository, times(1)).findProjectedById(TEST_ID);
+        assertThat(this.machineCache.stats().hitCount(), equalTo(1L));
+    }
+
+    /**
+     * - Given: there is no machine saved with the provided id.
+     * - When: getMachineById is being called multiple times with the ID.
+     * - Then: the lookup should reach the database only once and fail every time.
+     */
+    @Test
+    void shouldCacheMissingMachines() {
+        doReturn(Optional.empty()).when(machineRepository).findProjectedById(TEST_ID);
+
+        assertThrows(MachineDoesNotExistException.class, () -> this.machineService.getMachineById(TEST_ID));
+        assertThrows(MachineDoesNotExistException.class, () -> this.machineService.getMachineById(TEST_ID));
+
+        verify(machineRepository, times(1)).findProjectedById(TEST_ID);
+    }
+
+    /**
+     * - Given: ids which are not UUIDs, so they can not be ids of machines.
+     * - When: a machine is fetched, deleted and bulk deleted with these ids.
+     * - Then: the machines should not exist, without looking the ids up in the database.
+     */
+    @Test
+    void shouldNotLookUpMalformedIds() {
+        BulkOperationResponse response = this.machineService.deleteMachines(newArrayList("missingId", "1 OR 1=1"));
+
+        assertThrows(MachineDoesNotExistException.class, () -> this.machineService.getMachineById("missingId"));
+        assertThrows(MachineDoesNotExistException.class, () -> this.machineService.deleteMachineById("missingId"));
+        assertThat(response.getNotFoundIds(), equalTo(newArrayList("missingId", "1 OR 1=1")));
+        verifyNoInteractions(machineRepository);
+    }
+
+    /**
+     * - Given: there is a cached machine.
+     * - When: updateMachine is being called for the machine and then getMachineById is being called.
+     * - Then: the updated machine should be returned instead of the cached one.
+     */
+    @Test
+    void shouldNotServeStaleMachineAfterUpdate() {
+        Machine storedMachine = new Machine("test machine", "test description", 1999);
+        storedMachine.setId(TEST_ID);
+        doReturn(Optional.of(storedMachine.toDTO())).when(machineRepository).findProjectedById(TEST_ID);
+        this.machineService.getMachineById(TEST_ID);
+
+        MachineTO machineTO = new MachineTO();
+        machineTO.setId(TEST_ID);
+        machineTO.setName("test machine with new name");
+        doReturn(Optional.of(storedMachine)).when(machineRepository).findByIdAndDeletedFalse(TEST_ID);
+        this.machineService.updateMachine(machineTO);
+        doReturn(Optional.of(storedMachine.toDTO())).when(machineRepository).findProjectedById(TEST_ID);
+
+        assertThat(this.machineService.getMachineById(TEST_ID).getName(), equalTo(machineTO.getName()));
+    }
+
+    /**
+     * - Given: there is a cached machine.
+     * - When: deleteMachineById is being called for the machine and then getMachineById is being called.
+     * - Then: the fetch of the machine should fail instead of returning the cached one.
+     */
+    @Test
+    void shouldNotServeDeletedMachineFromCache() {
+        Machine storedMachine = new Machine("test machine", "test description", 1999);
+        storedMachine.setId(TEST_ID);
+        doReturn(Optional.of(storedMachine.toDTO())).when(machineRepository).findProjectedById(TEST_ID);
+        this.machineService.getMachineById(TEST_ID);
+
+        doReturn(1).when(machineRepository).softDeleteById(eq(TEST_ID), any(LocalDateTime.class));
+        doReturn(Optional.empty()).when(machineRepository).findProjectedById(TEST_ID);
+        this.machineService.deleteMachineById(TEST_ID);
+
+        assertThrows(MachineDoesNotExistException.class, () -> this.machineService.getMachineById(TEST_ID));
+    }
+
+    /**
+     * - Given: there are cached machines.
+     * - When: deleteMachines is being called for the machines and then getMachineById is being called.
+     * - Then: the fetch of the machines should fail instead of returning the cached ones.
+     */
+    @Test
+    void shouldNotServeBulkDeletedMachinesFromCache() {
+        Machine storedMachine = new Machine("test machine", "test description", 1999);
+        storedMachine.setId(TEST_ID);
+        doReturn(Optional.of(storedMachine.toDTO())).when(machineRepository).findProjectedById(TEST_ID);
+        this.machineService.getMachineById(TEST_ID);
+
+        doReturn(newArrayList(TEST_ID)).when(machineRepository).lockLiveIds(anyCollection());
+        doReturn(Optional.empty()).when(machineRepository).findProjectedById(TEST_ID);
+        this.machineService.deleteMachines(newArrayList(TEST_ID));
+
+        assertThrows(MachineDoesNotExistException.class, () -> this.machineService.getMachineById(TEST_ID));
+    }
+
+    /**
+     * - Given: there is a machine stored with an ID which matches the provided one, which is not cached.
+     * - When: getMachineVersion is being called with the ID.
+     * - Then: only the version of the machine should be fetched from the database.
+     */
+    @Test
+    void shouldFetchOnlyVersionOfMachineIfItIsNotCached() {
+        doReturn(Optional.of(3L)).when(machineRepository).findVersionById(TEST_ID);
+
+        assertThat(this.machineService.getMachineVersion(TEST_ID), equalTo(Optional.of(3L)));
+        verify(machineRepository, never()).findProjectedById(TEST_ID);
+    }
+
+    /**
+     * - Given: there is a cached machine.
+     * - When: getMachineVersion is being called with the ID of the machine.
+     * - Then: the version of the cached machine should be returned without querying the database.
+     */
+    @Test
+    void shouldReturnVersionOfCachedMachine() {
+        Machine storedMachine = new Machine("test machine", "test description", 1999);
+        storedMachine.setId(TEST_ID);
+        storedMachine.setVersion(2L);
+        doReturn(Optional.of(storedMachine.toDTO())).when(machineRepository).findProjectedById(TEST_ID);
+        this.machineService.getMachineById(TEST_ID);
+
+        assertThat(this.machineService.getMachineVersion(TEST_ID), equalTo(Optional.of(2L)));
+        verify(machineRepository, never()).findVersionById(TEST_ID);
+    }
+
+    /**
+     * - Given: there are more machines matching the search text than the requested page size.
+     * - When: searchMachines is being called with the text and the index of the second page.
+     * - Then: the machines of the second page should be returned with the index of the next page.
+     */
+    @Test
+    void shouldSearchMachinesAndReturnNextPageIfThereAreMoreMatches() {
+        Machine storedMachine = new Machine("test machine", "test description", 1999);
+        storedMachine.setId(TEST_ID);
+        Machine storedMachine1 = new Machine("test machine", "test description", 1999);
+        storedMachine1.setId(testId(1));
+        doReturn(newArrayList(storedMachine.toDTO(), storedMachine1.toDTO())).when(machineSearch).search("test", 1, 2);
+
+        MachineSearchPage page = this.machineService.searchMachines("test", 1, 1);
+
+        assertThat(page.getItems().size(), equalTo(1));
+        assertThat(page.getItems().get(0).getId(), equalTo(storedMachine.getId()));
+        assertThat(page.getNextPage(), equalTo(2));
+    }
+
+    /**
+     * - Given: a blank search text, a negative page index or a page size out of the allowed range.
+     * - When: searchMachines is being called with them.
+     * - Then: the search should fail without reaching the database.
+     */
+    @Test
+    void shouldFailToSearchMachinesIfParametersAreInvalid() {
+        assertThrows(InvalidSearchQueryException.class, () -> this.machineService.searchMachines(" ", 0, 10));
+        assertThrows(InvalidPageLimitException.class, () -> this.machineService.searchMachines("test", -1, 10));
+        assertThrows(InvalidPageLimitException.class,
+                () -> this.machineService.searchMachines("test", 0, MachineServiceImpl.MAX_SEARCH_PAGE_SIZE + 1));
+        verifyNoInteractions(machineSearch);
+    }
+
+    /**
+     * - Given: there are more changed and deleted machines since the watermark than the requested limit.
+     * - When: getMachineChanges is being called with the watermark.
+     * - Then: the changed machines and the ids of deleted ones should be returned separately, with the
+     * watermark of the last returned change and an indication that there are more changes.
+     */
+    @Test
+    void shouldSplitChangesIntoMachinesAndTombstones() {
+        LocalDateTime updatedAt = LocalDateTime.of(2020, 7, 20, 15, 9, 3);
+        String since = new MachineCursor(updatedAt, TEST_ID).encode();
+        doReturn(newArrayList(
+                new MachineDelta(testId(1), updatedAt, updatedAt.plusSeconds(1), "testMachine", null, 1999, 0L, false),
+                new MachineDelta(testId(2), updatedAt, updatedAt.plusSeconds(2), "testMachine", null, 1999, 1L, true),
+                new MachineDelta(testId(3), updatedAt, updatedAt.plusSeconds(3), "testMachine", null, 1999, 0L, false)))
+                .when(machineRepository).findChangesAfter(eq(updatedAt), eq(TEST_ID), any(LocalDateTime.class),
+                eq(PageRequest.of(0, 3)));
+
+        MachineChanges changes = this.machineService.getMachineChanges(since, 2);
+
+        assertThat(changes.getItems().size(), equalTo(1));
+        assertThat(changes.getItems().get(0).getId(), equalTo(testId(1)));
+        assertThat(changes.getDeletedIds(), equalTo(newArrayList(testId(2))));
+        assertThat(changes.getWatermark(), equalTo(new MachineCursor(updatedAt.plusSeconds(2), testId(2)).encode()));
+        assertThat(changes.isHasMore(), equalTo(true));
+    }
+
+    /**
+     * - Given: a write which started an hour ago is still running.
+     * - When: getMachineChanges is being called without a watermark.
+     * - Then: only the changes from before the start of the write, less the settle time, should be fetched.
+     */
+    @Test
+    void shouldHoldBackChangesSinceOldestRunningWrite() {
+        LocalDateTime oldestWriteStart = LocalDateTime.now().minusHours(1);
+        doReturn(Optional.of(oldestWriteStart)).when(machineWriteHorizon).findOldestRunningWriteStart();
+        doReturn(newArrayList()).when(machineRepository).findFirstChanges(any(LocalDateTime.class), any(PageRequest.class));
+
+        this.machineService.getMachineChanges(null, 10);
+
+        verify(machineRepository).findFirstChanges(oldestWriteStart.minusSeconds(5), PageRequest.of(0, 11));
+    }
+
+    /**
+     * - Given: there are no machines changed since the watermark.
+     * - When: getMachineChanges is being called with the watermark.
+     * - Then: no changes should be returned and the watermark should stay the same.
+     */
+    @Test
+    void shouldKeepWatermarkIfThereAreNoChanges() {
+        String since = new MachineCursor(LocalDateTime.of(2020, 7, 20, 15, 9, 3), TEST_ID).encode();
+        doReturn(newArrayList()).when(machineRepository)
+                .findChangesAfter(any(LocalDateTime.class), eq(TEST_ID), any(LocalDateTime.class), any(PageRequest.class));
+
+        MachineChanges changes = this.machineService.getMachineChanges(since, 10);
+
+        assertThat(changes.getItems().size(), equalTo(0));
+        assertThat(changes.getDeletedIds().size(), equalTo(0));
+        assertThat(changes.getWatermark(), equalTo(since));
+        assertThat(changes.isHasMore(), equalTo(false));
+    }
+
+    /**
+     * - Given: there is a machine stored with an ID which matches the provided one.
+     * - When: getMachineById is being called with the ID and a selection of fields.
+     * - Then: a DTO with the stored fields of the machine should be returned, which writes only the selected
+     * fields to JSON.
+     */
+    @Test
+    void shouldGetMachineWithSelectedFields() throws Exception {
+        Machine machine = new Machine("testMachine", "this is a test machine", 1999);
+        machine.setId(TEST_ID);
+        doReturn(Optional.of(machine.toDTO())).when(machineRepository).findProjectedById(TEST_ID);
+
+        MachineTO machineTO = this.machineService.getMachineById(TEST_ID, EnumSet.of(MachineField.ID, MachineField.NAME));
+
+        assertThat(machineTO.getDescription(), equalTo("this is a test machine"));
+        assertThat(new ObjectMapper().writeValueAsString(machineTO), equalTo("{\"id\":\"" + TEST_ID + "\",\"name\":\"testMachine\"}"));
+    }
+
+    /**
+     * - Given: machines are stored in the database.
+     * - When: getMachinePage is being called with a cursor and a selection of fields.
+     * - Then: the page should be fetched with the selected fields after the position of the cursor.
+     */
+    @Test
+    void shouldFetchPageWithSelectedFieldsAfterCursor() {
+        LocalDateTime updatedAt = LocalDateTime.of(2020, 7, 20, 15, 9, 3);
+        Set<MachineField> fields = EnumSet.of(MachineField.NAME);
+
+        this.machineService.getMachinePage(new MachineCursor(updatedAt, TEST_ID).encode(), 10, fields);
+
+        verify(machineRepository, times(1)).findPageWithFields(fields, updatedAt, TEST_ID, 11);
+        verify(machineRepository, never()).findPageAfter(any(LocalDateTime.class), anyString(), any(PageRequest.class));
+    }
+
+    /**
+     * - Given: machines deleted after the watermark were archived.
+     * - When: getMachineChanges is being called with the watermark.
+     * - Then: an exception should be thrown, since the deletions are no longer in the changes.
+     */
+    @Test
+    void shouldFailToFetchChangesIfDeletionsAfterWatermarkWereArchived() {
+        LocalDateTime updatedAt = LocalDateTime.of(2020, 7, 20, 15, 9, 3);
+        doReturn(updatedAt.plusDays(1)).when(machineRepository).findLastArchivedUpdatedAt();
+
+        assertThrows(ExpiredWatermarkException.class,
+                () -> this.machineService.getMachineChanges(new MachineCursor(updatedAt, TEST_ID).encode(), 10));
+        verify(machineRepository, never()).findChangesAfter(any(LocalDateTime.class), anyString(),
+                any(LocalDateTime.class), any(PageRequest.class));
+    }
+
+    /**
+     * - Given: there is a machine stored with an ID which matches the provided one.
+     * - When: updateMachine is being called with a DTO which only differs from the stored machine in its description.
+     * - Then: a revision should be appended with the next version, which contains only the description.
+     */
+    @Test
+    void shouldAppendRevisionWithChangedFieldsOnUpdate() {
+        Machine storedMachine = new Machine("test machine", "test description", 1999);
+        storedMachine.setId(TEST_ID);
+        storedMachine.setVersion(3);
+        doReturn(Optional.of(storedMachine)).when(machineRepository).findByIdAndDeletedFalse(TEST_ID);
+        MachineTO machineTO = storedMachine.toDTO();
+        machineTO.setDescription("new description");
+        ArgumentCaptor<MachineRevision> argumentCaptor = ArgumentCaptor.forClass(MachineRevision.class);
+
+        this.machineService.updateMachine(machineTO);
+
+        verify(entityManager, times(1)).persist(argumentCaptor.capture());
+        MachineRevision revision = argumentCaptor.getValue();
+        assertThat(revision.getMachineId(), equalTo(TEST_ID));
+        assertThat(revision.getRevision(), equalTo(4L));
+        assertThat(revision.getChangeType(), equalTo(MachineChangeType.UPDATED));
+        assertThat(revision.getChangedFields(), equalTo("description"));
+        assertThat(revision.getDescription(), equalTo("new description"));
+        assertThat(revision.getName(), nullValue());
+    }
+
+    /**
+     * - Given: there are two machines whose last revisions until the provided time did not delete them, and the
+     * revisions of the machine which was modified last.
+     * - When: getMachinesAsOf is being called with the time and a limit of one machine.
+     * - Then: only the machine which was modified last should be rebuilt, with the fields of all of its revisions,
+     * and the cursor of the next page should point after it.
+     */
+    @Test
+    void shouldRebuildPageOfMachinesAsOfTimeFromRevisionsOfPage() {
+        LocalDateTime createdAt = LocalDateTime.of(2020, 7, 20, 15, 9, 3);
+        Machine machine = new Machine("test machine", "test description", 1999);
+        machine.setId(testId(1));
+        MachineRevision update = new MachineRevision(testId(1), 1, createdAt.plusDays(1));
+        update.setChangeType(MachineChangeType.UPDATED);
+        update.setChanges(EnumSet.of(MachineField.YEAR_OF_PRODUCTION), null, null, 2005);
+        MachineRevision otherCreation = new MachineRevision(testId(2), 0, createdAt);
+        otherCreation.setChangeType(MachineChangeType.CREATED);
+        doReturn(newArrayList(update, otherCreation)).when(machineRevisionRepository)
+                .findFirstLastRevisionsUntil(createdAt.plusDays(3), PageRequest.of(0, 2));
+        doReturn(newArrayList(
+                MachineRevision.of(machine, 0, MachineChangeType.CREATED, createdAt, MachineRevision.CHANGEABLE_FIELDS),
+                update
+        )).when(machineRevisionRepository).findAllByMachineIdsUntil(newArrayList(testId(1)), createdAt.plusDays(3));
+
+        MachinePage page = this.machineService.getMachinesAsOf(createdAt.plusDays(3), null, 1);
+
+        assertThat(page.getItems().size(), equalTo(1));
+        MachineTO rebuiltMachine = page.getItems().get(0);
+        assertThat(rebuiltMachine.getId(), equalTo(testId(1)));
+        assertThat(rebuiltMachine.getName(), equalTo("test machine"));
+        assertThat(rebuiltMachine.getYearOfProduction(), equalTo(2005));
+        assertThat(rebuiltMachine.getCreatedAt(), equalTo(createdAt));
+        assertThat(rebuiltMachine.getUpdatedAt(), equalTo(createdAt.plusDays(1)));
+        assertThat(rebuiltMachine.getVersion(), equalTo(1L));
+        assertThat(page.getNextCursor(), equalTo(new MachineCursor(createdAt.plusDays(1), testId(1)).encode()));
+        verify(machineRevisionRepository, never()).findLastRevisionsUntilAfter(any(), any(), any(), any());
+    }
+
+    private static String testId(int number) {
+        return String.format("01733e5a-2a20-7000-8000-%012d", number);
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.machinist.MachinistApplication;
+import com.github.boardyb.machinist.datasource.ReadWriteRoutingDataSource;
+import com.github.boardyb.restmodel.MachineTO;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@SpringBootTest(classes = {
+        MachinistApplication.class,
+        IntegrationTestConfiguration.class,
+        MachineServiceRoutingTest.ReplicaConfiguration.class
+}, properties = {
+        "jdbc.url=" + MachineServiceRoutingTest.PRIMARY_URL,
+        "machinist.cache.machine.enabled=false"
+})
+class MachineServiceRoutingTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routingPrimaryDB;DB_CLOSE_DELAY=-1";
+    private static final String REPLICA_URL = "jdbc:h2:mem:routingReplicaDB;DB_CLOSE_DELAY=-1";
+    private static final String REPLICA_MACHINE_ID = "01733e5a-2a20-7000-8000-0000000000aa";
+    private static final String LAGGING_MACHINE_ID = "01733e5a-2a20-7000-8000-0000000000bb";
+
+    @Autowired
+    private MachineService machineService;
+
+    @Autowired
+    private MachineRepository machineRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Routes the data source of the test database, which is migrated by Flyway, and a replica which is migrated
+     * here, like the data source of the application when replicas are configured. It is not annotated, so the
+     * component scans of contexts started outside of tests, like the benchmarks, do not pick it up.
+     */
+    static class ReplicaConfiguration {
+
+        @Bean
+        static BeanPostProcessor replicaRoutingPostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!"dataSource".equals(beanName)) {
+                        return bean;
+                    }
+                    DataSource replica = new DriverManagerDataSource(REPLICA_URL);
+                    Flyway.configure().dataSource(replica).locations("classpath:db/migration").load().migrate();
+                    return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource((DataSource) bean,
+                            Collections.singletonList(replica), 1));
+                }
+            };
+        }
+    }
+
+    /**
+     * - Given: a machine which is only stored in the replica.
+     * - When: the version of the machine, the machine itself with a selection of fields and the version of the
+     * catalogue are fetched, while the cache is disabled.
+     * - Then: all of them should be read from the replica.
+     */
+    @Test
+    void shouldReadSingleMachinesAndVersionsFromReplica() {
+        JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL));
+        Timestamp updatedAt = Timestamp.valueOf(LocalDateTime.of(2030, 1, 1, 12, 0));
+        replica.update("INSERT INTO machinist.machine " +
+                        "(id, created_at, updated_at, name, description, year_of_production, deleted, version) " +
+                        "VALUES (?, ?, ?, 'replicaMachine', 'this is a replicated machine', 1999, false, 3)",
+                REPLICA_MACHINE_ID, updatedAt, updatedAt);
+        Long replicaMachineCount = replica.queryForObject(
+                "SELECT COUNT(*) FROM machinist.machine WHERE deleted = false", Long.class);
+
+        assertThat(this.machineService.getMachineVersion(REPLICA_MACHINE_ID), equalTo(Optional.of(3L)));
+        assertThat(this.machineService.getMachineById(REPLICA_MACHINE_ID, EnumSet.of(MachineField.NAME)).getName(),
+                equalTo("replicaMachine"));
+        MachineCatalogueVersion catalogueVersion = this.machineService.getCatalogueVersion();
+        assertThat(catalogueVersion.getMachineCount(), equalTo(replicaMachineCount));
+        assertThat(catalogueVersion.getLastUpdatedAt(), equalTo(updatedAt.toLocalDateTime()));
+    }
+
+    /**
+     * - Given: a machine whose update was not replayed by the replica yet.
+     * - When: the machine is looked up through an enabled cache in a read-only transaction.
+     * - Then: the machine should be loaded from the primary, so the cache holds its updated state.
+     */
+    @Test
+    void shouldLoadMachinesIntoCacheFromPrimary() {
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.of(2030, 1, 1, 12, 0));
+        String insert = "INSERT INTO machinist.machine " +
+                "(id, created_at, updated_at, name, description, year_of_production, deleted, version) " +
+                "VALUES (?, ?, ?, ?, 'this is a lagging machine', 1999, false, ?)";
+        new JdbcTemplate(new DriverManagerDataSource(PRIMARY_URL)).update(insert,
+                LAGGING_MACHINE_ID, createdAt, Timestamp.valueOf(LocalDateTime.of(2030, 1, 2, 12, 0)), "updatedMachine", 1);
+        new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL)).update(insert,
+                LAGGING_MACHINE_ID, createdAt, createdAt, "staleMachine", 0);
+        MachineCache machineCache = new MachineCache(true, 100, Duration.ofMinutes(5), Duration.ofSeconds(5));
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(this.transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        Optional<MachineTO> machine = readOnlyTransaction.execute(status ->
+                machineCache.get(LAGGING_MACHINE_ID, this.machineRepository::findProjectedById));
+
+        assertThat(machine.map(MachineTO::getName), equalTo(Optional.of("updatedMachine")));
+        assertThat(machineCache.getIfPresent(LAGGING_MACHINE_ID).map(MachineTO::getVersion), equalTo(Optional.of(1L)));
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.boardyb.machinist.machine;
+
+import com.github.boardyb.machinist.MachinistApplication;
+import com.github.boardyb.machinist.machine.exception.MachineDoesNotExistException;
+import com.github.boardyb.restmodel.AgeBucketCount;
+import com.github.boardyb.restmodel.BulkUpdateMachineRequest;
+import com.github.boardyb.restmodel.CreateMachineRequest;
+import com.github.boardyb.restmodel.MachineStats;
+import com.github.boardyb.restmodel.MachineTO;
+import com.github.boardyb.restmodel.YearOfProductionCount;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = {
+        MachinistApplication.class,
+        MachineController.class,
+        MachineExportController.class,
+        IntegrationTestConfiguration.class
+})
+class MachineStatisticsTest {
+
+    @Autowired
+    private MachineService machineService;
+
+    @Autowired
+    private MachineStatistics machineStatistics;
+
+    @Autowired
+    private MachineYearCountRepository machineYearCountRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * - Given: the counters are reconciled, and machines of two years of production are created, one and several
+     * at a time.
+     * - When: some of them are updated to another year, one and several at a time, and some of them are deleted.
+     * - Then: the statistics should count the machines which are not deleted by their current year of production,
+     * in the total and in the age bucket of the oldest machines.
+     */
+    @Test
+    void shouldCountMachinesByYearOfProductionWhenTheyChange() {
+        this.machineStatistics.reconcile();
+        MachineStats statsBefore = this.machineService.getMachineStats();
+        MachineTO machine1 = this.machineService.createMachine(createMachineRequest(1951));
+        List<MachineTO> machines = this.machineService.createMachines(Arrays.asList(
+                createMachineRequest(1951), createMachineRequest(1951), createMachineRequest(1952)));
+
+        machine1.setYearOfProduction(1953);
+        this.machineService.updateMachine(machine1);
+        BulkUpdateMachineRequest bulkUpdateMachineRequest = new BulkUpdateMachineRequest();
+        bulkUpdateMachineRequest.setIds(Arrays.asList(machines.get(0).getId(), machines.get(2).getId()));
+        bulkUpdateMachineRequest.setYearOfProduction(1953);
+        this.machineService.updateMachines(bulkUpdateMachineRequest);
+        this.machineService.deleteMachineById(machines.get(1).getId());
+        this.machineService.deleteMachines(Collections.singletonList(machine1.getId()));
+        MachineStats stats = this.machineService.getMachineStats();
+
+        assertThat(countOf(stats, 1951), Matchers.equalTo(0L));
+        assertThat(countOf(stats, 1952), Matchers.equalTo(0L));
+        assertThat(countOf(stats, 1953), Matchers.equalTo(2L));
+        assertThat(stats.getTotal(), Matchers.equalTo(statsBefore.getTotal() + 2));
+        assertThat(oldestAgeBucketOf(stats).getCount(),
+                Matchers.equalTo(oldestAgeBucketOf(statsBefore).getCount() + 2));
+        assertThat(oldestAgeBucketOf(stats).getMinAge(), Matchers.equalTo(30));
+        assertThat(oldestAgeBucketOf(stats).getMaxAge(), Matchers.nullValue());
+        assertThat(stats.getByAge().get(0).getMinAge(), Matchers.equalTo(0));
+        assertThat(stats.getByAge().get(0).getMaxAge(), Matchers.equalTo(5));
+    }
+
+    /**
+     * - Given: machines of a year of production whose counter drifted, and a counter of a year without machines.
+     * - When: the counters are reconciled.
+     * - Then: the drift should be detected and the counters corrected, so the next reconciliation finds no drift,
+     * and every valid year of production should have a counter.
+     */
+    @Test
+    void shouldCorrectCountersWhichDriftedWhenReconciled() {
+        this.machineService.createMachines(Arrays.asList(createMachineRequest(1961), createMachineRequest(1961)));
+        this.machineStatistics.reconcile();
+        new TransactionTemplate(this.transactionManager).executeWithoutResult(status -> {
+            this.machineYearCountRepository.addToCount(1961, 3);
+            this.machineYearCountRepository.save(new MachineYearCount(1962, 4L));
+        });
+
+        long drift = this.machineStatistics.reconcile();
+
+        assertThat(drift, Matchers.greaterThanOrEqualTo(7L));
+        assertThat(countOf(this.machineService.getMachineStats(), 1961), Matchers.equalTo(2L));
+        assertThat(countOf(this.machineService.getMachineStats(), 1962), Matchers.equalTo(0L));
+        assertThat(this.machineStatistics.reconcile(), Matchers.equalTo(0L));
+        assertThat(this.machineYearCountRepository.findById(MachineYearCount.UNKNOWN_YEAR).isPresent(),
+                Matchers.equalTo(true));
+        assertThat(this.machineYearCountRepository.count(), Matchers.greaterThanOrEqualTo(
+                (long) Machine.MAX_YEAR_OF_PRODUCTION - Machine.MIN_YEAR_OF_PRODUCTION + 2));
+    }
+
+    /**
+     * - Given: machines which are not deleted.
+     * - When: every machine is updated to another year of production while it is concurrently deleted or updated
+     * to a third year in bulk.
+     * - Then: no operation should fail except the updates of machines which were deleted before, and the counters
+     * should match the machines afterwards.
+     */
+    @Test
+    void shouldNotDeadlockWhenMachineIsChangedConcurrently() throws Exception {
+        this.machineStatistics.reconcile();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 50; i++) {
+                MachineTO machine = this.machineService.createMachine(createMachineRequest(1971));
+                CyclicBarrier barrier = new CyclicBarrier(2);
+                machine.setYearOfProduction(1972);
+                Future<?> update = executor.submit(() -> {
+                    barrier.await();
+                    try {
+                        this.machineService.updateMachine(machine);
+                    } catch (MachineDoesNotExistException e) {
+                        // deleted before
+                    }
+                    return null;
+                });
+                boolean delete = i % 2 == 0;
+                Future<?> otherChange = executor.submit(() -> {
+                    barrier.await();
+                    if (delete) {
+                        this.machineService.deleteMachineById(machine.getId());
+                    } else {
+                        BulkUpdateMachineRequest bulkUpdateMachineRequest = new BulkUpdateMachineRequest();
+                        bulkUpdateMachineRequest.setIds(Collections.singletonList(machine.getId()));
+                        bulkUpdateMachineRequest.setYearOfProduction(1973);
+                        this.machineService.updateMachines(bulkUpdateMachineRequest);
+                    }
+                    return null;
+                });
+                update.get(10, TimeUnit.SECONDS);
+                otherChange.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(this.machineStatistics.reconcile(), Matchers.equalTo(0L));
+    }
+
+    private static CreateMachineRequest createMachineRequest(int yearOfProduction) {
+        CreateMachineRequest createMachineRequest = new CreateMachineRequest();
+        createMachineRequest.setName("testMachine");
+        createMachineRequest.setDescription("this is a test machine");
+        createMachineRequest.setYearOfProduction(yearOfProduction);
+        return createMachineRequest;
+    }
+
+    private static long countOf(MachineStats stats, int yearOfProduction) {
+        return stats.getByYearOfProduction().stream()
+                .filter(count -> count.getYearOfProduction() == yearOfProduction)
+                .mapToLong(YearOfProductionCount::getCount)
+                .sum();
+    }
+
+    private static AgeBucketCount oldestAgeBucketOf(MachineStats stats) {
+        return stats.getByAge().get(stats.getByAge().size() - 1);
+    }
+}
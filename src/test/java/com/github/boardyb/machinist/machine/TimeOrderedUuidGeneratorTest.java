@@ -0,0 +1,64 @@
+package com.github.boardyb.machinist.machine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+class TimeOrderedUuidGeneratorTest {
+
+    private final AtomicLong currentTimeMillis = new AtomicLong(1594479600000L);
+    private final TimeOrderedUuidGenerator generator =
+            new TimeOrderedUuidGenerator(this.currentTimeMillis::get, new Random(42));
+
+    /**
+     * - Given: a generator with a clock which is set to a point in time.
+     * - When: an id is generated.
+     * - Then: the id should be a version 7 UUID of the IETF variant, which starts with the milliseconds of the clock.
+     */
+    @Test
+    void shouldGenerateVersion7UuidWithTimestampOfClock() {
+        UUID uuid = this.generator.nextUuid();
+
+        assertThat(uuid.version(), equalTo(7));
+        assertThat(uuid.variant(), equalTo(2));
+        assertThat(uuid.getMostSignificantBits() >>> 16, equalTo(1594479600000L));
+        assertThat(uuid.toString().startsWith("01733e63-e180-7"), equalTo(true));
+        assertThat(Machine.isWellFormedId(uuid.toString()), equalTo(true));
+    }
+
+    /**
+     * - Given: a generator with a clock which stands still, then goes back, and then moves on.
+     * - When: 10000 ids are generated in each of these phases.
+     * - Then: every id should be greater than the one before it, both as a string and in the byte order of Postgres.
+     */
+    @Test
+    void shouldGenerateIncreasingIdsEvenIfClockStandsStillOrGoesBack() {
+        List<UUID> uuids = new ArrayList<>();
+        generate(uuids, 10000);
+        this.currentTimeMillis.addAndGet(-1000);
+        generate(uuids, 10000);
+        this.currentTimeMillis.addAndGet(60000);
+        generate(uuids, 10000);
+
+        for (int i = 1; i < uuids.size(); i++) {
+            assertThat(uuids.get(i).toString(), greaterThan(uuids.get(i - 1).toString()));
+            assertThat(Long.compareUnsigned(uuids.get(i).getMostSignificantBits(),
+                    uuids.get(i - 1).getMostSignificantBits()), greaterThan(0));
+        }
+        assertThat(uuids.get(20000).getMostSignificantBits() >>> 16, equalTo(1594479659000L));
+    }
+
+    private void generate(List<UUID> uuids, int count) {
+        for (int i = 0; i < count; i++) {
+            uuids.add(this.generator.nextUuid());
+        }
+    }
+}
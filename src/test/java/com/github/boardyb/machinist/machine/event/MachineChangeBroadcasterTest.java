@@ -0,0 +1,171 @@
+package com.github.boardyb.machinist.machine.event;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class MachineChangeBroadcasterTest {
+
+    private static final String EPOCH = "testEpoch";
+
+    /**
+     * - Given: a subscriber is subscribed to the changes of machines.
+     * - When: machines are changed.
+     * - Then: the machines changed by every operation should be sent to the subscriber in one event, with the epoch
+     * and an increasing sequence as its id.
+     */
+    @Test
+    void shouldSendChangesToSubscriberInOrder() {
+        MachineChangeBroadcaster broadcaster = new MachineChangeBroadcaster(10, 10, Runnable::run, EPOCH);
+        RecordingEmitter emitter = new RecordingEmitter();
+        broadcaster.subscribe(emitter, null);
+
+        broadcaster.onMachineChanged(new MachineChangedEvent(MachineChangeType.CREATED, newArrayList("testId", "testId1")));
+        broadcaster.onMachineChanged(new MachineChangedEvent(MachineChangeType.DELETED, Collections.singleton("testId")));
+
+        assertThat(emitter.sentEvents(), equalTo(newArrayList(
+                "id:testEpoch-1 event:created testId,testId1", "id:testEpoch-2 event:deleted testId")));
+    }
+
+    /**
+     * - Given: machines were changed while a subscriber was disconnected.
+     * - When: the subscriber subscribes again with the id of the last event it received.
+     * - Then: the changes after that event should be sent to the subscriber before the new ones.
+     */
+    @Test
+    void shouldResumeAfterLastEventId() {
+        MachineChangeBroadcaster broadcaster = new MachineChangeBroadcaster(10, 10, Runnable::run, EPOCH);
+        broadcaster.onMachineChanged(new MachineChangedEvent(MachineChangeType.CREATED, Collections.singleton("testId")));
+        broadcaster.onMachineChanged(new MachineChangedEvent(MachineChangeType.CREATED, Collections.singleton("testId1")));
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        broadcaster.subscribe(emitter, "testEpoch-1");
+        broadcaster.onMachineChanged(new MachineChangedEvent(MachineChangeType.UPDATED, Collections.singleton("testId")));
+
+        assertThat(emitter.sentEvents(), equalTo(newArrayList(
+                "id:testEpoch-2 event:created testId1", "id:testEpoch-3 event:updated testId")));
+    }
+
+    /**
+     * - Given: more machines were changed while a subscriber was disconnected than the changes which are kept.
+     * - When: the subscriber subscribes again with the id of the last event it received.
+     * - Then: the subscriber should be asked to resync and should be disconnected.
+     */
+    @Test
+    void shouldRequestResyncIfLastEventIdIsNoLongerAvailable() {
+        MachineChangeBroadcaster broadcaster = new MachineChangeBroadcaster(10, 2, Runnable::run, EPOCH);
+        for (String machineId : newArrayList("testId", "testId1", "testId2")) {
+            broadcaster.onMachineChanged(new MachineChangedEvent(MachineChangeType.CREATED, Collections.singleton(machineId)));
+        }
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        broadcaster.subscribe(emitter, "testEpoch-0");
+
+        assertThat(emitter.sentEvents(), equalTo(newArrayList("event:resync resync")));
+        assertThat(emitter.completed, equalTo(true));
+        assertThat(broadcaster.getSubscriberCount(), equalTo(0));
+    }
+
+    /**
+     * - Given: a subscriber whose buffer can not be sent as fast as machines are changed.
+     * - When: more operations change machines than its buffer can hold.
+     * - Then: the buffered changes should be dropped, the subscriber should be asked to resync and should be
+     * disconnected without blocking the publisher.
+     */
+    @Test
+    void shouldRequestResyncIfSubscriberCanNotKeepUp() {
+        List<Runnable> pendingSends = new ArrayList<>();
+        MachineChangeBroadcaster broadcaster = new MachineChangeBroadcaster(2, 10, pendingSends::add, EPOCH);
+        RecordingEmitter emitter = new RecordingEmitter();
+        broadcaster.subscribe(emitter, null);
+
+        for (String machineId : newArrayList("testId", "testId1", "testId2")) {
+            broadcaster.onMachineChanged(new MachineChangedEvent(MachineChangeType.CREATED, Collections.singleton(machineId)));
+        }
+        pendingSends.forEach(Runnable::run);
+
+        assertThat(emitter.sentEvents(), equalTo(newArrayList("event:resync resync")));
+        assertThat(emitter.completed, equalTo(true));
+        assertThat(broadcaster.getSubscriberCount(), equalTo(0));
+    }
+
+    /**
+     * - Given: a subscriber whose buffer holds two changes.
+     * - When: a batch operation changes more machines than the buffer can hold.
+     * - Then: the machines should be sent to the subscriber in a single event, without asking it to resync.
+     */
+    @Test
+    void shouldSendMachinesOfBatchOperationInOneEvent() {
+        MachineChangeBroadcaster broadcaster = new MachineChangeBroadcaster(2, 2, Runnable::run, EPOCH);
+        RecordingEmitter emitter = new RecordingEmitter();
+        broadcaster.subscribe(emitter, null);
+        List<String> machineIds = IntStream.range(0, 1000).mapToObj(i -> "testId" + i).collect(Collectors.toList());
+
+        broadcaster.onMachineChanged(new MachineChangedEvent(MachineChangeType.CREATED, machineIds));
+
+        assertThat(emitter.sentEvents(), equalTo(newArrayList(
+                "id:testEpoch-1 event:created " + String.join(",", machineIds))));
+        assertThat(emitter.completed, equalTo(false));
+        assertThat(broadcaster.getSubscriberCount(), equalTo(1));
+    }
+
+    /**
+     * - Given: an instance which sent changes, and another instance, or the same instance after a restart, which
+     * sent the same number of changes.
+     * - When: a subscriber subscribes to the second instance with the id of the last event it received from the
+     * first one.
+     * - Then: the subscriber should be asked to resync, since the changes of the two instances differ.
+     */
+    @Test
+    void shouldRequestResyncIfLastEventIdIsFromOtherEpoch() {
+        MachineChangeBroadcaster broadcaster = new MachineChangeBroadcaster(10, 10, Runnable::run, EPOCH);
+        broadcaster.onMachineChanged(new MachineChangedEvent(MachineChangeType.CREATED, Collections.singleton("testId")));
+        broadcaster.onMachineChanged(new MachineChangedEvent(MachineChangeType.CREATED, Collections.singleton("testId1")));
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        broadcaster.subscribe(emitter, "otherEpoch-1");
+
+        assertThat(emitter.sentEvents(), equalTo(newArrayList("event:resync resync")));
+        assertThat(emitter.completed, equalTo(true));
+        assertThat(broadcaster.getSubscriberCount(), equalTo(0));
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final List<SseEventBuilder> events = new ArrayList<>();
+        private boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            this.events.add(builder);
+        }
+
+        @Override
+        public synchronized void complete() {
+            this.completed = true;
+        }
+
+        List<String> sentEvents() {
+            return this.events.stream()
+                    .map(event -> event.build().stream()
+                            .map(data -> data.getData() instanceof MachineChange
+                                    ? String.join(",", ((MachineChange) data.getData()).getMachineIds())
+                                    : data.getData().toString())
+                            .collect(Collectors.joining())
+                            .replace("\n", " ")
+                            .replace("data:", "")
+                            .trim())
+                    .collect(Collectors.toList());
+        }
+    }
+}
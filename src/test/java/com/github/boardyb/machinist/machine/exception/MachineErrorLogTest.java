@@ -0,0 +1,84 @@
+package com.github.boardyb.machinist.machine.exception;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+class MachineErrorLogTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @AfterEach
+    void tearDown() {
+        MachineException.setStackTraceEnabled(false);
+    }
+
+    /**
+     * - Given: an error log which logs 2 errors of a type of an operation in a minute, and every 5th after them.
+     * - When: 12 errors of the same type are returned by an operation in a minute, and one more after the minute.
+     * - Then: the first 2 errors, the 7th and the 12th should be logged and the others should be counted as
+     * suppressed, and the error after the minute should be logged again.
+     */
+    @Test
+    void shouldSampleErrorsOverLimitOfInterval() {
+        MachineErrorLog errorLog = new MachineErrorLog(this.meterRegistry, false, 2, Duration.ofMinutes(1), 5,
+                this.nanoTime::get);
+        StringBuilder logged = new StringBuilder();
+
+        for (int i = 1; i <= 12; i++) {
+            logged.append(errorLog.log(new MachineDoesNotExistException("testId"), "getMachineById") ? 'L' : '-');
+        }
+        this.nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        boolean loggedAfterInterval = errorLog.log(new MachineDoesNotExistException("testId"), "getMachineById");
+
+        assertThat(logged.toString(), equalTo("LL----L----L"));
+        assertThat(loggedAfterInterval, equalTo(true));
+        assertThat(this.meterRegistry.get(MachineErrorLog.SUPPRESSED_METRIC_NAME)
+                .tag("exception", "MachineDoesNotExistException")
+                .tag("operation", "getMachineById")
+                .counter().count(), equalTo(8.0));
+    }
+
+    /**
+     * - Given: an error log which logs 1 error of a type of an operation in a minute.
+     * - When: errors of the same type are returned by two operations, and errors of two types by the same operation.
+     * - Then: the first error of every type of every operation should be logged.
+     */
+    @Test
+    void shouldLimitErrorsByTypeAndOperation() {
+        MachineErrorLog errorLog = new MachineErrorLog(this.meterRegistry, false, 1, Duration.ofMinutes(1), 100,
+                this.nanoTime::get);
+
+        assertThat(errorLog.log(new MachineDoesNotExistException("testId"), "getMachineById"), equalTo(true));
+        assertThat(errorLog.log(new MachineDoesNotExistException("testId"), "getMachineById"), equalTo(false));
+        assertThat(errorLog.log(new MachineDoesNotExistException("testId"), "deleteMachine"), equalTo(true));
+        assertThat(errorLog.log(new InvalidCursorException("testCursor"), "getMachineById"), equalTo(true));
+    }
+
+    /**
+     * - Given: stack traces are turned off, and then turned on.
+     * - When: an exception of the machine API is created.
+     * - Then: it should only have a stack trace when stack traces are turned on.
+     */
+    @Test
+    void shouldCaptureStackTracesOnlyWhenTurnedOn() {
+        new MachineErrorLog(this.meterRegistry, false, 1, Duration.ofMinutes(1), 100, this.nanoTime::get);
+        MachineDoesNotExistException stacklessException = new MachineDoesNotExistException("testId");
+        new MachineErrorLog(this.meterRegistry, true, 1, Duration.ofMinutes(1), 100, this.nanoTime::get);
+        MachineDoesNotExistException exception = new MachineDoesNotExistException("testId");
+
+        assertThat(stacklessException.getStackTrace(), arrayWithSize(0));
+        assertThat(exception.getStackTrace(), not(arrayWithSize(0)));
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.boardyb.machinist.startup;
+
+import com.github.boardyb.machinist.machine.MachineArchiver;
+import com.github.boardyb.machinist.machine.MachineController;
+import com.github.boardyb.machinist.machine.MachineServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class FastStartupConfigurationTest {
+
+    private final LazyInitializationExcludeFilter filter = FastStartupConfiguration.eagerBeansFilter();
+
+    /**
+     * - Given: the filter of the beans which are created at startup by the fast-startup profile.
+     * - When: controllers, beans with scheduled jobs and other beans are filtered.
+     * - Then: only the controllers and the beans with scheduled jobs should be excluded from lazy initialization.
+     */
+    @Test
+    void shouldCreateOnlyControllersAndScheduledJobsAtStartup() {
+        assertThat(isEager(MachineController.class), equalTo(true));
+        assertThat(isEager(MachineArchiver.class), equalTo(true));
+        assertThat(isEager(MachineServiceImpl.class), equalTo(false));
+        assertThat(this.filter.isExcluded("unresolved", new RootBeanDefinition(), null), equalTo(false));
+    }
+
+    private boolean isEager(Class<?> beanType) {
+        return this.filter.isExcluded(beanType.getSimpleName(), new RootBeanDefinition(beanType), beanType);
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.boardyb.machinist.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class RateLimitFilterTest {
+
+    private final AtomicLong nanoTime = new AtomicLong(-TimeUnit.HOURS.toNanos(1));
+
+    /**
+     * - Given: a client with a full bucket of 10 tokens, refilled by 1 token per second.
+     * - When: the client fetches all machines, which costs 4 tokens, three times in a row.
+     * - Then: the first two requests should pass with the remaining tokens in their headers, the third one should be
+     * rejected with HTTP 429 until enough tokens were refilled.
+     */
+    @Test
+    void shouldRejectRequestsOverRateLimitOfClient() throws Exception {
+        RateLimitFilter filter = createFilter(10, 1, 1000);
+
+        MockHttpServletResponse first = fetch(filter, "/api/machine/all", "10.0.0.1");
+        MockHttpServletResponse second = fetch(filter, "/api/machine/all", "10.0.0.1");
+        MockHttpServletResponse rejected = fetch(filter, "/api/machine/all", "10.0.0.1");
+        this.nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        MockHttpServletResponse retried = fetch(filter, "/api/machine/all", "10.0.0.1");
+
+        assertThat(first.getStatus(), equalTo(200));
+        assertThat(first.getHeader(RateLimitFilter.LIMIT_HEADER), equalTo("10"));
+        assertThat(first.getHeader(RateLimitFilter.REMAINING_HEADER), equalTo("6"));
+        assertThat(first.getHeader(RateLimitFilter.RESET_HEADER), equalTo("4"));
+        assertThat(second.getStatus(), equalTo(200));
+        assertThat(second.getHeader(RateLimitFilter.REMAINING_HEADER), equalTo("2"));
+        assertThat(rejected.getStatus(), equalTo(429));
+        assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER), equalTo("2"));
+        assertThat(rejected.getHeader(RateLimitFilter.REMAINING_HEADER), equalTo("2"));
+        assertThat(rejected.getContentAsString(), containsString("Too many requests of operation [getAllMachines]"));
+        assertThat(retried.getStatus(), equalTo(200));
+        assertThat(retried.getHeader(RateLimitFilter.REMAINING_HEADER), equalTo("0"));
+    }
+
+    /**
+     * - Given: a client which drained its bucket.
+     * - When: other clients send requests from another address or with a configured API key from the same address.
+     * - Then: the requests of the other clients should pass.
+     */
+    @Test
+    void shouldLimitClientsSeparately() throws Exception {
+        RateLimitFilter filter = createFilter(4, 1, 1000);
+        fetch(filter, "/api/machine/all", "10.0.0.1");
+
+        MockHttpServletRequest requestWithApiKey = new MockHttpServletRequest("GET", "/api/machine/all");
+        requestWithApiKey.setRemoteAddr("10.0.0.1");
+        requestWithApiKey.addHeader(RateLimitFilter.API_KEY_HEADER, "testKey1");
+
+        assertThat(fetch(filter, "/api/machine/all", "10.0.0.1").getStatus(), equalTo(429));
+        assertThat(fetch(filter, "/api/machine/all", "10.0.0.2").getStatus(), equalTo(200));
+        assertThat(filter(filter, requestWithApiKey).getStatus(), equalTo(200));
+    }
+
+    /**
+     * - Given: a client which drained the bucket of its address.
+     * - When: the client sends requests with API keys which are not configured, a new one every time.
+     * - Then: the requests should be limited by the bucket of the address, and no buckets should be kept for the keys.
+     */
+    @Test
+    void shouldLimitRequestsWithUnknownApiKeysByAddress() throws Exception {
+        RateLimitFilter filter = createFilter(4, 1, 1000);
+        fetch(filter, "/api/machine/all", "10.0.0.1");
+
+        for (int i = 0; i < 10; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/machine/all");
+            request.setRemoteAddr("10.0.0.1");
+            request.addHeader(RateLimitFilter.API_KEY_HEADER, "madeUpKey" + i);
+
+            assertThat(filter(filter, request).getStatus(), equalTo(429));
+        }
+        assertThat(filter.getTrackedClients(), equalTo(1L));
+    }
+
+    /**
+     * - Given: a limit which keeps at most 100 clients, and evicts them after a minute of idleness.
+     * - When: 10000 distinct clients send a request, and then a minute passes.
+     * - Then: at most 100 clients should be kept after the requests, and none after the minute.
+     */
+    @Test
+    void shouldBoundAndEvictBucketsOfIdleClients() throws Exception {
+        RateLimitFilter filter = createFilter(10, 1, 100);
+
+        for (int i = 0; i < 10000; i++) {
+            fetch(filter, "/api/machine/1", "10.0." + (i / 256) + "." + (i % 256));
+        }
+        long clientsAfterRequests = filter.getTrackedClients();
+        this.nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+        assertThat(clientsAfterRequests, lessThanOrEqualTo(100L));
+        assertThat(filter.getTrackedClients(), equalTo(0L));
+    }
+
+    /**
+     * - Given: a client with a full bucket of 1000 tokens, which is not refilled during the test.
+     * - When: 16 threads send 200 requests each on behalf of the client at the same time.
+     * - Then: exactly 1000 requests should pass, and the others should be rejected.
+     */
+    @Test
+    void shouldNotPassMoreRequestsThanCapacityUnderContention() throws Exception {
+        RateLimitFilter filter = createFilter(1000, 1, 1000);
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> passedRequests = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                passedRequests.add(executor.submit(() -> {
+                    start.await();
+                    int passed = 0;
+                    for (int j = 0; j < 200; j++) {
+                        if (fetch(filter, "/api/machine/1", "10.0.0.1").getStatus() == 200) {
+                            passed++;
+                        }
+                    }
+                    return passed;
+                }));
+            }
+            start.countDown();
+            int passed = 0;
+            for (Future<Integer> future : passedRequests) {
+                passed += future.get(30, TimeUnit.SECONDS);
+            }
+
+            assertThat(passed, equalTo(1000));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private RateLimitFilter createFilter(long capacity, double tokensPerSecond, long maximumClients) {
+        return new RateLimitFilter(capacity, tokensPerSecond, Duration.ofSeconds(10), maximumClients,
+                Collections.singletonMap("getAllMachines", 4), Collections.singleton("testKey1"),
+                request -> request.getRequestURI().endsWith("/all") ? "getAllMachines" : "getMachineById",
+                new ObjectMapper().findAndRegisterModules(), this.nanoTime::get);
+    }
+
+    private static MockHttpServletResponse fetch(RateLimitFilter filter, String uri, String address) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setRemoteAddr(address);
+        return filter(filter, request);
+    }
+
+    private static MockHttpServletResponse filter(RateLimitFilter filter, MockHttpServletRequest request)
+            throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}